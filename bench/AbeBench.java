@@ -0,0 +1,122 @@
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// 基准测试入口，参数与JMH的命令行参数相近（不使用JMH的原因见BenchHarness）：
+//   -f <正则>          只运行名字匹配的基准，如 -f cpabe.decrypt
+//   -wi <n> -i <n>     预热轮数和测量轮数，默认1和3
+//   -r <ms>            每轮时长，默认1000毫秒
+//   -p width=2,4 -p depth=1,2 -p shape=AND,OR,MAJORITY -p atts=10,50 -p degree=2,8,32
+//   -o <文件>          以CSV格式保存结果
+//   -baseline <文件> -tolerance <比例>
+//                      与之前保存的CSV结果对比，平均耗时增加超过tolerance（默认0.10）的基准视为性能回退，
+//                      存在回退时以状态码1退出，便于在持续集成中使用
+// 群运算后端由JVM参数-Dabe.backend=java|pbc选择，见ABEUtils.getPairing
+public class AbeBench {
+
+    public static void main(String[] args) throws Exception {
+        String filter = null;
+        int warmup = 1;
+        int iterations = 3;
+        long iterationMillis = 1000;
+        String output = null;
+        String baseline = null;
+        double tolerance = 0.10;
+        Map<String, String> p = new HashMap<>();
+        p.put("width", "2,4");
+        p.put("depth", "1,2");
+        p.put("shape", "AND,OR,MAJORITY");
+        p.put("atts", "10,50");
+        p.put("degree", "2,8,32");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-f": filter = args[++i]; break;
+                case "-wi": warmup = Integer.parseInt(args[++i]); break;
+                case "-i": iterations = Integer.parseInt(args[++i]); break;
+                case "-r": iterationMillis = Long.parseLong(args[++i]); break;
+                case "-o": output = args[++i]; break;
+                case "-baseline": baseline = args[++i]; break;
+                case "-tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                case "-p": {
+                    String[] kv = args[++i].split("=", 2);
+                    p.put(kv[0], kv[1]);
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("unknown option: " + args[i]);
+            }
+        }
+        int[] widths = ints(p.get("width"));
+        int[] depths = ints(p.get("depth"));
+        int[] attCounts = ints(p.get("atts"));
+        int[] degrees = ints(p.get("degree"));
+        PolicyShapes.Shape[] shapes = Arrays.stream(p.get("shape").split(","))
+                .map(String::trim).map(PolicyShapes.Shape::valueOf).toArray(PolicyShapes.Shape[]::new);
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        System.out.println("# backend: " + bp.getClass().getName());
+        BenchHarness h = new BenchHarness(warmup, iterations, iterationMillis, filter);
+        PrimitiveBenchmarks.run(h, bp);
+        AccessTreeBenchmarks.run(h, bp, degrees, widths, depths, shapes);
+        SchemeBenchmarks.run(h, bp, widths, depths, shapes, attCounts);
+
+        if (output != null) {
+            writeCsv(h, output);
+        }
+        if (baseline != null && compare(h, readCsv(baseline), tolerance) > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static int[] ints(String s) {
+        return Arrays.stream(s.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static void writeCsv(BenchHarness h, String fileName) throws IOException {
+        try (PrintWriter out = new PrintWriter(fileName, "UTF-8")) {
+            out.println("benchmark,mean_ns,error_ns,ops");
+            for (BenchHarness.Result r : h.getResults()) {
+                out.printf("%s,%.1f,%.1f,%d%n", r.key(), r.meanNanos, r.errorNanos, r.ops);
+            }
+        }
+    }
+
+    private static Map<String, Double> readCsv(String fileName) throws IOException {
+        Map<String, Double> res = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(fileName))) {
+            in.readLine();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] cols = line.split(",");
+                res.put(cols[0], Double.parseDouble(cols[1]));
+            }
+        }
+        return res;
+    }
+
+    // 返回性能回退的基准个数
+    private static int compare(BenchHarness h, Map<String, Double> baseline, double tolerance) {
+        int regressions = 0;
+        System.out.println();
+        System.out.println("comparison with baseline (tolerance " + (int) (tolerance * 100) + "%):");
+        for (BenchHarness.Result r : h.getResults()) {
+            Double base = baseline.get(r.key());
+            if (base == null) {
+                continue;
+            }
+            double change = r.meanNanos / base - 1;
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %+7.1f%%%s%n", r.key(), change * 100, regressed ? "  REGRESSION" : "");
+        }
+        return regressions;
+    }
+}
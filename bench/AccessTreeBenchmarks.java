@@ -0,0 +1,53 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+// 访问树相关运算的耗时：多项式求值qx、拉格朗日因子（逐个、批量、缓存）、秘密共享nodeShare和秘密恢复nodeRecover
+public final class AccessTreeBenchmarks {
+
+    private AccessTreeBenchmarks() {
+    }
+
+    public static void run(BenchHarness h, Pairing bp, int[] degrees, int[] widths, int[] depths,
+                           PolicyShapes.Shape[] shapes) throws Exception {
+        for (int d : degrees) {
+            Element[] coef = AccessTree.randomP(d, bp.getZr().newRandomElement().getImmutable(), bp);
+            Element index = bp.getZr().newElement(d + 1).getImmutable();
+            h.run("accessTree.qx", BenchHarness.params("degree", d), () -> AccessTree.qx(index, coef, bp));
+
+            int[] S = PolicyShapes.attributes(d);
+            h.run("accessTree.lagrange", BenchHarness.params("setSize", d), () -> AccessTree.lagrange(1, S, 0, bp));
+            h.run("accessTree.lagrangeCoefficients", BenchHarness.params("setSize", d),
+                    () -> AccessTree.lagrangeCoefficients(S, 0, bp));
+            if (h.selected("accessTree.lagrangeCached")) {
+                LagrangeCache cache = new LagrangeCache(bp);
+                h.run("accessTree.lagrangeCached", BenchHarness.params("setSize", d), () -> cache.get(S, 0));
+            }
+        }
+
+        for (int width : widths) {
+            for (int depth : depths) {
+                for (PolicyShapes.Shape shape : shapes) {
+                    Node[] tree = PolicyShapes.tree(width, depth, shape);
+                    Policy policy = Policy.of(tree);
+                    int[] atts = PolicyShapes.attributes(policy.leafCount());
+                    Object[] params = {"width", width, "depth", depth, "shape", shape};
+                    Element secret = bp.getZr().newRandomElement().getImmutable();
+
+                    h.run("accessTree.nodeShare", BenchHarness.params(params), () -> {
+                        tree[0].secretShare = secret;
+                        AccessTree.nodeShare(tree, tree[0], bp);
+                        return tree[0].secretShare;
+                    });
+                    // nodeShare之后每个叶子都有秘密分片，nodeRecover在Zr上逐层恢复根节点的秘密
+                    tree[0].secretShare = secret;
+                    AccessTree.nodeShare(tree, tree[0], bp);
+                    AttributeSet attSet = AttributeSet.of(atts);
+                    h.run("accessTree.nodeRecover", BenchHarness.params(params),
+                            () -> AccessTree.nodeRecover(tree, tree[0], attSet, bp));
+                    h.run("accessTree.leafCoefficients", BenchHarness.params(params),
+                            () -> AccessTree.leafCoefficients(policy, attSet, bp));
+                }
+            }
+        }
+    }
+}
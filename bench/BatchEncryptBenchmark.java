@@ -0,0 +1,60 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 批量加密吞吐量：逐条调用encrypt与encryptBatch（不同线程数）的对比
+// 用法：BatchEncryptBenchmark [条目数] [叶子个数] [线程数...]
+public class BatchEncryptBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int leaves = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int[] threadCounts = {1, 2, 4};
+        if (args.length > 2) {
+            threadCounts = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                threadCounts[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp).withFixedBaseTables(FixedBaseTable.DEFAULT_WINDOW, 64L << 20);
+
+        // 访问树为leaves个叶子的或门，所有条目使用同一棵访问树
+        int[] children = new int[leaves];
+        Node[] accessTree = new Node[leaves + 1];
+        accessTree[0] = new Node(new int[]{1, leaves}, children);
+        for (int i = 0; i < leaves; i++) {
+            children[i] = i + 1;
+            accessTree[i + 1] = new Node(i + 1);
+        }
+
+        List<Element> messages = new ArrayList<>();
+        List<Node[]> accessTrees = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            messages.add(bp.getGT().newRandomElement().getImmutable());
+            accessTrees.add(accessTree);
+        }
+
+        // 预热
+        engine.encryptBatch(messages.subList(0, 1), accessTrees.subList(0, 1), 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < items; i++) {
+            engine.encrypt(messages.get(i), accessTrees.get(i));
+        }
+        report("single encrypt", items, System.nanoTime() - start);
+
+        for (int threads : threadCounts) {
+            start = System.nanoTime();
+            List<CPABECiphertext> cts = engine.encryptBatch(messages, accessTrees, threads);
+            report("batch, threads=" + threads, cts.size(), System.nanoTime() - start);
+        }
+    }
+
+    private static void report(String name, int items, long nanos) {
+        System.out.printf("%-20s %8.2f ms/item %8.2f items/s%n", name, nanos / 1e6 / items, items / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// 基准测试框架：按JMH的平均时间模式（AverageTime）测量每次操作的耗时
+// 每个基准先做若干轮预热，再做若干轮测量，每轮在固定时长内反复执行操作，返回值写入sink防止被JIT消除
+// 核心代码都在默认包中，而JMH不能为默认包中的类生成基准代码：它的注解处理器拒绝默认包中的@Benchmark类，
+// 放在具名包中的基准类又无法引用默认包中的类（Java不允许从默认包import），只能通过反射调用，
+// 反射本身的开销会计入测量结果，因此这里用一个同样语义的小框架代替
+// 与JMH的差别：所有基准在同一个JVM中依次运行（相当于-f 0），JIT对前面基准收集的类型信息会影响后面的基准，
+// 对比结果时应使用相同的-f过滤条件
+public final class BenchHarness {
+
+    // 一次被测操作，返回值会被消费掉
+    public interface Op {
+        Object run() throws Exception;
+    }
+
+    // 每个基准的测量结果，时间单位为纳秒/次
+    public static final class Result {
+        public final String name;
+        public final Map<String, String> params;
+        public final double meanNanos;
+        public final double errorNanos;
+        public final long ops;
+
+        Result(String name, Map<String, String> params, double meanNanos, double errorNanos, long ops) {
+            this.name = name;
+            this.params = params;
+            this.meanNanos = meanNanos;
+            this.errorNanos = errorNanos;
+            this.ops = ops;
+        }
+
+        // 基准名和参数组成的唯一标识，用于与基线结果对比
+        public String key() {
+            StringBuilder sb = new StringBuilder(name);
+            for (Map.Entry<String, String> e : params.entrySet()) {
+                sb.append(':').append(e.getKey()).append('=').append(e.getValue());
+            }
+            return sb.toString();
+        }
+    }
+
+    private static volatile int sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final Pattern filter;
+    private final List<Result> results = new ArrayList<>();
+
+    public BenchHarness(int warmupIterations, int measurementIterations, long iterationMillis, String filter) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.filter = filter == null ? null : Pattern.compile(filter);
+    }
+
+    public static Map<String, String> params(Object... kv) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            params.put(String.valueOf(kv[i]), String.valueOf(kv[i + 1]));
+        }
+        return params;
+    }
+
+    // 基准名不匹配过滤条件时返回false，调用方可以据此跳过耗时的准备工作
+    public boolean selected(String name) {
+        return filter == null || filter.matcher(name).find();
+    }
+
+    public void run(String name, Map<String, String> params, Op op) throws Exception {
+        if (!selected(name)) {
+            return;
+        }
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(op);
+        }
+        double[] samples = new double[measurementIterations];
+        long totalOps = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] r = iteration(op);
+            samples[i] = (double) r[1] / r[0];
+            totalOps += r[0];
+        }
+        double mean = 0;
+        for (double s : samples) {
+            mean += s;
+        }
+        mean /= samples.length;
+        double var = 0;
+        for (double s : samples) {
+            var += (s - mean) * (s - mean);
+        }
+        // 与JMH一样报告99.9%置信区间的半宽（Student t分布）
+        int df = samples.length - 1;
+        double error = df > 0 ? tQuantile(df) * Math.sqrt(var / df) / Math.sqrt(samples.length) : Double.NaN;
+        Result result = new Result(name, params, mean, error, totalOps);
+        results.add(result);
+        System.out.printf("%-60s %14.3f +- %10.3f us/op%n", result.key(), mean / 1e3, error / 1e3);
+    }
+
+    // 自由度为1..30时双侧99.9%的t分布分位数
+    private static final double[] T_999 = {
+            636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+
+    // 自由度更大时用正态分位数的一阶修正 z + (z^3 + z) / (4 df)
+    static double tQuantile(int df) {
+        if (df <= T_999.length) {
+            return T_999[df - 1];
+        }
+        double z = 3.2905;
+        return z + (z * z * z + z) / (4.0 * df);
+    }
+
+    // 返回{执行次数, 耗时纳秒}
+    private long[] iteration(Op op) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            Object res = op.run();
+            sink ^= res == null ? 0 : System.identityHashCode(res);
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        return new long[]{ops, elapsed};
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,101 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+// 密文库的扫描代价：写入count条CP-ABE密文，其中一半的访问策略不被私钥满足，
+// 分别以“完整解码后解密”、“先检查头部、只解码选中的叶子”以及“先在索引上筛选、再批量解密候选条目”三种方式扫描整个文件
+// 用法：CiphertextStoreBenchmark [密文条数] [每个策略中门限子树的叶子数]
+public class CiphertextStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        CPABEDecryptionKey dk = engine.prepare(engine.keygen(new int[]{1, 2, 3}));
+        // 满足的策略：1 AND (2 of 子树)，不满足的策略换用私钥没有的属性
+        Policy[] policies = {policy(1, 2, width), policy(1000, 2000, width)};
+
+        File file = File.createTempFile("ciphertexts", ".abes");
+        file.deleteOnExit();
+        Path path = file.toPath();
+        try (CiphertextStore.Writer writer = CiphertextStore.create(path, ABEBinaryFormat.Type.CP_CIPHERTEXT, true)) {
+            for (int i = 0; i < count; i++) {
+                Policy policy = policies[i % 2];
+                writer.append(policy, engine.encrypt(bp.getGT().newRandomElement(), policy));
+            }
+        }
+        CiphertextStore store = CiphertextStore.open(path);
+
+        // 完整解码：读出所有叶子的密文组件后再判断策略
+        long t0 = System.nanoTime();
+        int full = 0;
+        for (int i = 0; i < store.size(); i++) {
+            CiphertextStore.Entry entry = store.entry(i);
+            Policy policy = entry.policy();
+            Element m = engine.decrypt(policy, entry.decodeCP(bp, entry.attributes()), dk, DecryptMode.FLATTENED);
+            if (m != null) {
+                full++;
+            }
+        }
+        long t1 = System.nanoTime();
+
+        // 只检查头部：不满足的条目不解码任何元素
+        long rejectNanos = 0;
+        long acceptNanos = 0;
+        int lazy = 0;
+        for (int i = 0; i < store.size(); i++) {
+            long start = System.nanoTime();
+            Element m = engine.decrypt(store.entry(i), dk);
+            long elapsed = System.nanoTime() - start;
+            if (m != null) {
+                lazy++;
+                acceptNanos += elapsed;
+            }
+            else {
+                rejectNanos += elapsed;
+            }
+        }
+        long t2 = System.nanoTime();
+
+        // 先在索引上筛出候选条目，只把候选条目交给解密服务
+        CiphertextIndex index = CiphertextIndex.build(store);
+        long t3 = System.nanoTime();
+        BitSet candidates = index.candidates(dk.sk.userAttList);
+        long t4 = System.nanoTime();
+        DecryptionService.BulkResult bulk;
+        try (DecryptionService service = DecryptionService.withBoundedPool(engine, null,
+                Runtime.getRuntime().availableProcessors())) {
+            service.registerCPKey("user", dk.sk);
+            bulk = service.decryptAllCP("user", store, index).join();
+        }
+        long t5 = System.nanoTime();
+        if (full != lazy || candidates.cardinality() != lazy || !bulk.isOk() || bulk.results.size() != lazy) {
+            throw new IllegalStateException("decrypted " + full + " entries fully, " + lazy + " lazily, "
+                    + candidates.cardinality() + " candidates, " + bulk.results.size() + " in bulk");
+        }
+
+        int rejected = count - lazy;
+        System.out.printf("%d entries (%d satisfied), %d leaves per policy, file %d bytes%n",
+                count, lazy, policies[0].leafCount(), file.length());
+        System.out.printf("full decode   %8.1f ms%n", (t1 - t0) / 1e6);
+        System.out.printf("header check  %8.1f ms%n", (t2 - t1) / 1e6);
+        System.out.printf("  rejected    %8.1f us/entry%n", rejected == 0 ? 0 : rejectNanos / 1e3 / rejected);
+        System.out.printf("  decrypted   %8.1f ms/entry%n", lazy == 0 ? 0 : acceptNanos / 1e6 / lazy);
+        System.out.printf("index build   %8.1f ms (%d distinct policies)%n", (t3 - t2) / 1e6, index.policyCount());
+        System.out.printf("index query   %8.1f us (%d candidates)%n", (t4 - t3) / 1e3, candidates.cardinality());
+        System.out.printf("bulk decrypt  %8.1f ms%n", (t5 - t4) / 1e6);
+    }
+
+    private static Policy policy(int first, int base, int width) {
+        StringBuilder sb = new StringBuilder().append(first).append(" AND 2 of (");
+        for (int i = 0; i < width; i++) {
+            sb.append(i == 0 ? "" : ", ").append(base + i);
+        }
+        return Policy.compile(sb.append(")").toString());
+    }
+}
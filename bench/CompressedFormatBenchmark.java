@@ -0,0 +1,74 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+// 对比CP-ABE密文以原始G1元素和压缩G1元素存储时的大小，以及写入、读取（解压需要开平方）的耗时
+// 用法：CompressedFormatBenchmark [叶子个数] [重复次数]
+public class CompressedFormatBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int leaves = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+
+        // 访问树为leaves个叶子的与门
+        int[] children = new int[leaves];
+        Node[] accessTree = new Node[leaves + 1];
+        accessTree[0] = new Node(new int[]{leaves, leaves}, children);
+        for (int i = 0; i < leaves; i++) {
+            children[i] = i + 1;
+            accessTree[i + 1] = new Node(i + 1);
+        }
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext ct = engine.encrypt(message, accessTree);
+
+        byte[] raw = encode(ct, false);
+        byte[] compressed = encode(ct, true);
+        if (!ct.C0.isEqual(ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(compressed), bp).C0)) {
+            throw new IllegalStateException("round trip failed");
+        }
+
+        // 预热
+        for (int i = 0; i < 3; i++) {
+            ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(raw), bp);
+            ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(compressed), bp);
+        }
+
+        long rawWrite = 0, compressedWrite = 0, rawRead = 0, compressedRead = 0;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            encode(ct, false);
+            rawWrite += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            encode(ct, true);
+            compressedWrite += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(raw), bp);
+            rawRead += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(compressed), bp);
+            compressedRead += System.nanoTime() - start;
+        }
+
+        System.out.println("leaves=" + leaves + ", rounds=" + rounds);
+        System.out.printf("size:   raw %d bytes, compressed %d bytes (%.1f%% saved)%n",
+                raw.length, compressed.length, 100.0 * (raw.length - compressed.length) / raw.length);
+        System.out.printf("write:  raw %.3f ms, compressed %.3f ms%n", rawWrite / 1e6 / rounds, compressedWrite / 1e6 / rounds);
+        System.out.printf("read:   raw %.3f ms, compressed %.3f ms (%.3f ms per G1 element extra)%n",
+                rawRead / 1e6 / rounds, compressedRead / 1e6 / rounds,
+                (compressedRead - rawRead) / 1e6 / rounds / (2 * leaves + 1));
+    }
+
+    private static byte[] encode(CPABECiphertext ct, boolean compressG1) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(ct, out, compressG1);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,76 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+// 对比同一私钥反复解密时，普通配对、配对预处理以及配对连乘三种方式的耗时
+// 用法：DecryptionKeyBenchmark [叶子个数] [解密次数]
+public class DecryptionKeyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int leaves = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+
+        // 访问树为leaves个叶子的与门，用户拥有全部属性
+        int[] userAttList = new int[leaves];
+        int[] children = new int[leaves];
+        Node[] accessTree = new Node[leaves + 1];
+        accessTree[0] = new Node(new int[]{leaves, leaves}, children);
+        for (int i = 0; i < leaves; i++) {
+            userAttList[i] = i + 1;
+            children[i] = i + 1;
+            accessTree[i + 1] = new Node(i + 1);
+        }
+
+        CPABESecretKey sk = engine.keygen(userAttList);
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext[] cts = new CPABECiphertext[rounds];
+        for (int i = 0; i < rounds; i++) {
+            cts[i] = engine.encrypt(message, accessTree);
+        }
+
+        long start = System.nanoTime();
+        CPABEDecryptionKey dk = engine.prepare(sk);
+        long prepareNanos = System.nanoTime() - start;
+
+        // 预热
+        engine.decrypt(accessTree, cts[0], sk);
+        engine.decrypt(accessTree, cts[0], dk);
+        engine.decrypt(accessTree, cts[0], dk, DecryptMode.PRODUCT_PAIRING);
+
+        long plainNanos = 0;
+        long preNanos = 0;
+        long productNanos = 0;
+        for (CPABECiphertext ct : cts) {
+            start = System.nanoTime();
+            Element res = engine.decrypt(accessTree, ct, sk);
+            plainNanos += System.nanoTime() - start;
+            check(message, res);
+
+            start = System.nanoTime();
+            res = engine.decrypt(accessTree, ct, dk);
+            preNanos += System.nanoTime() - start;
+            check(message, res);
+
+            start = System.nanoTime();
+            res = engine.decrypt(accessTree, ct, dk, DecryptMode.PRODUCT_PAIRING);
+            productNanos += System.nanoTime() - start;
+            check(message, res);
+        }
+
+        System.out.println("leaves=" + leaves + ", rounds=" + rounds);
+        System.out.printf("prepare:            %.2f ms%n", prepareNanos / 1e6);
+        System.out.printf("plain decrypt:      %.2f ms/op%n", plainNanos / 1e6 / rounds);
+        System.out.printf("preprocessed:       %.2f ms/op%n", preNanos / 1e6 / rounds);
+        System.out.printf("product pairing:    %.2f ms/op%n", productNanos / 1e6 / rounds);
+        System.out.printf("speedup:            %.2fx (preprocessed), %.2fx (product pairing)%n",
+                (double) plainNanos / preNanos, (double) plainNanos / productNanos);
+    }
+
+    private static void check(Element message, Element res) {
+        if (res == null || !message.isEqual(res)) {
+            throw new IllegalStateException("decryption failed");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// DecryptionService的压力测试：对每个线程数，用同样个数的客户端线程各自循环提交解密请求并等待结果（闭环），
+// 统计每个请求从提交到得到结果的延迟的p50/p99以及整体吞吐量
+// 用法：DecryptionLoadTest [每轮请求数] [叶子个数] [线程数...]
+public class DecryptionLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int leaves = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int[] threadCounts = args.length > 2
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8};
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+
+        // 访问树为leaves个叶子的或门与一个2-of-3门的与，用户满足其中的一部分属性
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 1; i <= leaves; i++) {
+            sb.append(i > 1 ? " OR " : "").append(i);
+        }
+        sb.append(") AND 2 of (").append(leaves + 1).append(", ").append(leaves + 2).append(", ").append(leaves + 3).append(")");
+        Policy policy = Policy.compile(sb.toString());
+
+        // 同一密文用多个私钥编号解密，模拟多个用户
+        int keys = 16;
+        CPABECiphertext[] cts = new CPABECiphertext[8];
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        for (int i = 0; i < cts.length; i++) {
+            cts[i] = engine.encrypt(message, policy);
+        }
+
+        System.out.println("policy leaves=" + policy.leafCount() + ", requests per run=" + requests
+                + ", cpus=" + Runtime.getRuntime().availableProcessors());
+        System.out.println("threads    p50(ms)    p99(ms)    throughput(ops/s)");
+        for (int threads : threadCounts) {
+            try (DecryptionService service = DecryptionService.withBoundedPool(engine, null, threads)) {
+                for (int k = 0; k < keys; k++) {
+                    service.registerCPKey("user-" + k, engine.keygen(new int[]{1 + k % leaves, leaves + 1, leaves + 3}));
+                }
+                // 预热
+                for (int i = 0; i < threads * 2; i++) {
+                    check(service.decryptCP("user-" + (i % keys), policy, cts[i % cts.length]).get(), message);
+                }
+
+                long[] latencies = new long[requests];
+                AtomicInteger next = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(threads);
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    Thread client = new Thread(() -> {
+                        try {
+                            int i;
+                            while ((i = next.getAndIncrement()) < requests) {
+                                long begin = System.nanoTime();
+                                DecryptResult result = service.decryptCP("user-" + (i % keys), policy, cts[i % cts.length]).get();
+                                latencies[i] = System.nanoTime() - begin;
+                                check(result, message);
+                            }
+                        }
+                        catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        finally {
+                            done.countDown();
+                        }
+                    });
+                    client.start();
+                }
+                done.await();
+                long elapsed = System.nanoTime() - start;
+
+                Arrays.sort(latencies);
+                System.out.printf("%7d %10.2f %10.2f %16.1f%n", threads,
+                        percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6, requests / (elapsed / 1e9));
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static void check(DecryptResult result, Element message) {
+        if (!result.isOk() || !message.isEqual(result.message)) {
+            throw new IllegalStateException("decryption failed: " + result);
+        }
+    }
+}
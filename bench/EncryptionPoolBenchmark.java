@@ -0,0 +1,71 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+// 在线/离线加密的请求路径延迟：与直接加密比较池已补满时的加密耗时，并比较两种密文的解密耗时
+// 用法：EncryptionPoolBenchmark [密文条数] [访问树叶子数] [后台补充线程数]
+public class EncryptionPoolBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int leaves = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        int[] atts = new int[leaves];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < leaves; i++) {
+            atts[i] = i + 1;
+            sb.append(i == 0 ? "" : " AND ").append(i + 1);
+        }
+        Policy policy = Policy.compile(sb.toString());
+        CPABEDecryptionKey dk = engine.prepare(engine.keygen(atts));
+        Element[] messages = new Element[count];
+        for (int i = 0; i < count; i++) {
+            messages[i] = bp.getGT().newRandomElement().getImmutable();
+        }
+
+        CPABECiphertext[] offline = new CPABECiphertext[count];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            offline[i] = engine.encrypt(messages[i], policy);
+        }
+        long t1 = System.nanoTime();
+
+        CPABECiphertext[] online = new CPABECiphertext[count];
+        long t2, t3, t4;
+        String stats;
+        try (EncryptionPool pool = new EncryptionPool(engine, count, count, threads)) {
+            pool.register(atts);
+            t2 = System.nanoTime();
+            pool.fill();
+            t3 = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                online[i] = pool.encrypt(messages[i], policy);
+            }
+            t4 = System.nanoTime();
+            stats = pool.toString();
+        }
+
+        long t5 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            engine.decrypt(policy, offline[i], dk, DecryptMode.FLATTENED);
+        }
+        long t6 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (!messages[i].isEqual(engine.decrypt(policy, online[i], dk, DecryptMode.FLATTENED))) {
+                throw new IllegalStateException("online ciphertext " + i + " does not decrypt");
+            }
+        }
+        long t7 = System.nanoTime();
+
+        System.out.printf("%d ciphertexts, %d leaves, %d refill threads%n", count, leaves, threads);
+        System.out.printf("encrypt            %8.3f ms/ct%n", (t1 - t0) / 1e6 / count);
+        System.out.printf("pool fill          %8.3f ms/ct%n", (t3 - t2) / 1e6 / count);
+        System.out.printf("online encrypt     %8.3f ms/ct  (%.1fx)%n", (t4 - t3) / 1e6 / count,
+                (double) (t1 - t0) / (t4 - t3));
+        System.out.printf("decrypt            %8.3f ms/ct%n", (t6 - t5) / 1e6 / count);
+        System.out.printf("decrypt (online)   %8.3f ms/ct%n", (t7 - t6) / 1e6 / count);
+        System.out.println(stats);
+    }
+}
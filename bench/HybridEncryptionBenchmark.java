@@ -0,0 +1,81 @@
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+// 混合加密的吞吐量：生成sizeMB大小的随机文件，以CP-ABE混合加密后分别顺序解密、随机访问解密若干分块
+// 明文、密文都通过文件流式处理，内存占用只与分块大小有关
+// 用法：HybridEncryptionBenchmark [文件大小MB] [分块大小KB]
+public class HybridEncryptionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long sizeMB = args.length > 0 ? Long.parseLong(args[0]) : 64;
+        int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) * 1024 : HybridEncryption.DEFAULT_CHUNK_SIZE;
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        Policy policy = Policy.compile("(1 AND 2) OR 2 of (3, 4, 5)");
+        CPABEDecryptionKey dk = engine.prepare(engine.keygen(new int[]{1, 2}));
+
+        File plain = File.createTempFile("hybrid", ".plain");
+        File cipher = File.createTempFile("hybrid", ".abe");
+        plain.deleteOnExit();
+        cipher.deleteOnExit();
+        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+        try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(plain)), expected)) {
+            Random random = new Random(1);
+            byte[] block = new byte[1 << 20];
+            for (long i = 0; i < sizeMB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+
+        long t0 = System.nanoTime();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(plain));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(cipher))) {
+            HybridEncryption.encrypt(engine, policy, in, out, chunkSize);
+        }
+        long t1 = System.nanoTime();
+        MessageDigest actual = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(cipher));
+             OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), actual)) {
+            if (!HybridEncryption.decrypt(engine, dk, in, out)) {
+                throw new IllegalStateException("policy not satisfied");
+            }
+        }
+        long t2 = System.nanoTime();
+        if (!Arrays.equals(expected.digest(), actual.digest())) {
+            throw new IllegalStateException("decrypted data does not match");
+        }
+
+        int reads = 100;
+        long t3, t4;
+        try (FileChannel channel = FileChannel.open(cipher.toPath(), StandardOpenOption.READ)) {
+            t3 = System.nanoTime();
+            HybridEncryption.ChunkReader reader = HybridEncryption.open(channel, engine, dk);
+            Random random = new Random(2);
+            for (int i = 0; i < reads; i++) {
+                reader.readChunk(random.nextInt((int) reader.chunkCount()));
+            }
+            t4 = System.nanoTime();
+        }
+
+        double mb = sizeMB;
+        System.out.printf("size %d MB, chunk %d KB, ciphertext %d bytes%n", sizeMB, chunkSize / 1024, cipher.length());
+        System.out.printf("encrypt  %8.1f ms  %7.1f MB/s%n", (t1 - t0) / 1e6, mb / ((t1 - t0) / 1e9));
+        System.out.printf("decrypt  %8.1f ms  %7.1f MB/s%n", (t2 - t1) / 1e6, mb / ((t2 - t1) / 1e9));
+        System.out.printf("open + %d random chunks  %.1f ms%n", reads, (t4 - t3) / 1e6);
+    }
+}
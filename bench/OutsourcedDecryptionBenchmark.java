@@ -0,0 +1,76 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// 外包解密的代价分布：客户端直接解密、服务端转换、客户端完成解密（一次GT指数运算）各自的单次耗时，
+// 以及解密服务批量转换的吞吐量
+// 用法：OutsourcedDecryptionBenchmark [密文条数] [访问树叶子数] [服务线程数]
+public class OutsourcedDecryptionBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int leaves = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        int[] atts = new int[leaves];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < leaves; i++) {
+            atts[i] = i + 1;
+            sb.append(i == 0 ? "" : " AND ").append(i + 1);
+        }
+        Policy policy = Policy.compile(sb.toString());
+        CPABESecretKey sk = engine.keygen(atts);
+        CPABEOutsourcedKey key = engine.outsource(sk);
+        CPABEDecryptionKey tk = engine.prepare(key.transformKey);
+
+        List<Element> messages = new ArrayList<>();
+        List<CPABECiphertext> cts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(bp.getGT().newRandomElement().getImmutable());
+            cts.add(engine.encrypt(messages.get(i), policy));
+        }
+
+        // 客户端直接解密：没有预处理的私钥，每条密文都需要全部配对
+        long t0 = System.nanoTime();
+        for (CPABECiphertext ct : cts) {
+            engine.decrypt(policy, ct, sk, DecryptMode.FLATTENED);
+        }
+        long t1 = System.nanoTime();
+        List<CPABEPartialCiphertext> partials = new ArrayList<>();
+        for (CPABECiphertext ct : cts) {
+            partials.add(engine.transform(policy, ct, tk));
+        }
+        long t2 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (!messages.get(i).isEqual(engine.decrypt(partials.get(i), key.retrievalKey))) {
+                throw new IllegalStateException("outsourced decryption of ciphertext " + i + " failed");
+            }
+        }
+        long t3 = System.nanoTime();
+
+        List<DecryptResult> results;
+        long t4, t5;
+        try (DecryptionService service = DecryptionService.withBoundedPool(engine, null, threads)) {
+            service.registerCPKey("client", key.transformKey);
+            t4 = System.nanoTime();
+            results = service.transformCPBatch("client", Collections.nCopies(count, policy), cts).join();
+            t5 = System.nanoTime();
+        }
+        for (DecryptResult result : results) {
+            if (!result.isOk()) {
+                throw new IllegalStateException("batch transform failed: " + result);
+            }
+        }
+
+        System.out.printf("%d ciphertexts, %d leaves, %d service threads%n", count, leaves, threads);
+        System.out.printf("client decrypt    %8.2f ms/ct%n", (t1 - t0) / 1e6 / count);
+        System.out.printf("server transform  %8.2f ms/ct%n", (t2 - t1) / 1e6 / count);
+        System.out.printf("client finish     %8.3f ms/ct%n", (t3 - t2) / 1e6 / count);
+        System.out.printf("batch transform   %8.1f ct/s%n", count / ((t5 - t4) / 1e9));
+    }
+}
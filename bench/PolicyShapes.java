@@ -0,0 +1,67 @@
+// 生成基准测试使用的访问树：宽度width、深度depth的满树，每个内部节点的门限由shape决定
+// 叶子属性依次编号为1, 2, 3, ...，共width^depth个
+// 直接构造Node[]而不经过策略编译器，避免相邻的AND/OR门被合并而改变树的深度
+public final class PolicyShapes {
+
+    public enum Shape {
+        // n-of-n
+        AND,
+        // 1-of-n
+        OR,
+        // (n/2+1)-of-n
+        MAJORITY
+    }
+
+    private PolicyShapes() {
+    }
+
+    public static int leafCount(int width, int depth) {
+        int n = 1;
+        for (int i = 0; i < depth; i++) {
+            n *= width;
+        }
+        return n;
+    }
+
+    // 按层序编号的满树，节点i的子节点为 i*width+1 ... i*width+width
+    public static Node[] tree(int width, int depth, Shape shape) {
+        int internal = 0;
+        for (int level = 0; level < depth; level++) {
+            internal += leafCount(width, level);
+        }
+        int total = internal + leafCount(width, depth);
+        Node[] nodes = new Node[total];
+        for (int i = 0; i < internal; i++) {
+            int[] children = new int[width];
+            for (int j = 0; j < width; j++) {
+                children[j] = i * width + j + 1;
+            }
+            nodes[i] = new Node(new int[]{threshold(width, shape), width}, children);
+        }
+        for (int i = internal; i < total; i++) {
+            nodes[i] = new Node(i - internal + 1);
+        }
+        return nodes;
+    }
+
+    public static Policy policy(int width, int depth, Shape shape) {
+        return Policy.of(tree(width, depth, shape));
+    }
+
+    public static int threshold(int width, Shape shape) {
+        switch (shape) {
+            case AND: return width;
+            case OR: return 1;
+            default: return width / 2 + 1;
+        }
+    }
+
+    // 1, 2, ..., n
+    public static int[] attributes(int n) {
+        int[] atts = new int[n];
+        for (int i = 0; i < n; i++) {
+            atts[i] = i + 1;
+        }
+        return atts;
+    }
+}
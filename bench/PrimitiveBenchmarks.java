@@ -0,0 +1,43 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+// a.properties曲线上基本运算的耗时：配对、各个群上的指数运算、哈希到G1
+public final class PrimitiveBenchmarks {
+
+    private PrimitiveBenchmarks() {
+    }
+
+    public static void run(BenchHarness h, Pairing bp) throws Exception {
+        Element g = bp.getG1().newRandomElement().getImmutable();
+        Element g2 = bp.getG1().newRandomElement().getImmutable();
+        Element gt = bp.pairing(g, g2).getImmutable();
+        Element z = bp.getZr().newRandomElement().getImmutable();
+        Element z2 = bp.getZr().newRandomElement().getImmutable();
+
+        h.run("primitive.pairing", BenchHarness.params(), () -> bp.pairing(g, g2));
+        if (h.selected("primitive.pairingPreprocessed")) {
+            PairingPreProcessing pre = bp.getPairingPreProcessingFromElement(g);
+            h.run("primitive.pairingPreprocessed", BenchHarness.params(), () -> pre.pairing(g2));
+        }
+        h.run("primitive.g1PowZn", BenchHarness.params(), () -> g.powZn(z));
+        h.run("primitive.g1CurvePow", BenchHarness.params(), () -> CurvePow.powZn(g, z));
+        if (h.selected("primitive.g1FixedBasePow")) {
+            FixedBaseTable table = new FixedBaseTable(g, FixedBaseTable.DEFAULT_WINDOW);
+            h.run("primitive.g1FixedBasePow", BenchHarness.params("window", table.getWindow()), () -> table.powZn(z));
+        }
+        h.run("primitive.gtPowZn", BenchHarness.params(), () -> gt.powZn(z));
+        h.run("primitive.g1Mul", BenchHarness.params(), () -> g.mul(g2));
+        h.run("primitive.gtMul", BenchHarness.params(), () -> gt.mul(gt));
+        h.run("primitive.zrMul", BenchHarness.params(), () -> z.mul(z2));
+        h.run("primitive.zrInvert", BenchHarness.params(), () -> z.invert());
+        h.run("primitive.sha1", BenchHarness.params(), () -> CPABE.sha1("12345"));
+        int[] att = {0};
+        h.run("primitive.hashToG1", BenchHarness.params(), () -> AttributeHashCache.hash(bp, ++att[0]));
+        if (h.selected("primitive.hashToG1Cached")) {
+            AttributeHashCache cache = new AttributeHashCache(bp, 1024);
+            cache.warmUp(PolicyShapes.attributes(1024));
+            h.run("primitive.hashToG1Cached", BenchHarness.params(), () -> cache.get(1 + (++att[0] & 1023)));
+        }
+    }
+}
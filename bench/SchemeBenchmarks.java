@@ -0,0 +1,89 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+// CP-ABE和KP-ABE的setup/keygen/encrypt/decrypt耗时，按访问树的宽度、深度、门限形状以及属性个数参数化
+public final class SchemeBenchmarks {
+
+    private SchemeBenchmarks() {
+    }
+
+    public static void run(BenchHarness h, Pairing bp, int[] widths, int[] depths, PolicyShapes.Shape[] shapes,
+                           int[] attCounts) throws Exception {
+        Element message = bp.getGT().newRandomElement().getImmutable();
+
+        // ------------------------------------------------------------ CP-ABE
+        h.run("cpabe.setup", BenchHarness.params(), () -> CPABEEngine.setup(bp));
+        CPABEEngine cp = CPABEEngine.setup(bp);
+        for (int n : attCounts) {
+            int[] atts = PolicyShapes.attributes(n);
+            h.run("cpabe.keygen", BenchHarness.params("atts", n), () -> cp.keygen(atts));
+        }
+        for (int width : widths) {
+            for (int depth : depths) {
+                for (PolicyShapes.Shape shape : shapes) {
+                    Policy policy = PolicyShapes.policy(width, depth, shape);
+                    Object[] params = {"width", width, "depth", depth, "shape", shape};
+                    h.run("cpabe.encrypt", BenchHarness.params(params), () -> cp.encrypt(message, policy));
+
+                    if (!h.selected("cpabe.decrypt")) {
+                        continue;
+                    }
+                    CPABECiphertext ct = cp.encrypt(message, policy);
+                    CPABESecretKey sk = cp.keygen(PolicyShapes.attributes(policy.leafCount()));
+                    CPABEDecryptionKey dk = cp.prepare(sk);
+                    for (DecryptMode mode : DecryptMode.values()) {
+                        h.run("cpabe.decrypt", BenchHarness.params(concat(params, "mode", mode)),
+                                () -> cp.decrypt(policy, ct, sk, mode));
+                    }
+                    h.run("cpabe.decrypt", BenchHarness.params(concat(params, "mode", "FLATTENED_PREPROCESSED")),
+                            () -> cp.decrypt(policy, ct, dk, DecryptMode.FLATTENED));
+                }
+            }
+        }
+
+        // ------------------------------------------------------------ KP-ABE
+        for (int n : attCounts) {
+            h.run("kpabe.setup", BenchHarness.params("atts", n), () -> KPABEEngine.setup(bp, n));
+        }
+        int maxAtts = 0;
+        for (int width : widths) {
+            for (int depth : depths) {
+                maxAtts = Math.max(maxAtts, PolicyShapes.leafCount(width, depth));
+            }
+        }
+        for (int n : attCounts) {
+            maxAtts = Math.max(maxAtts, n);
+        }
+        KPABEEngine kp = KPABEEngine.setup(bp, maxAtts);
+        for (int n : attCounts) {
+            int[] atts = PolicyShapes.attributes(n);
+            h.run("kpabe.encrypt", BenchHarness.params("atts", n), () -> kp.encrypt(message, atts));
+        }
+        for (int width : widths) {
+            for (int depth : depths) {
+                for (PolicyShapes.Shape shape : shapes) {
+                    Policy policy = PolicyShapes.policy(width, depth, shape);
+                    Object[] params = {"width", width, "depth", depth, "shape", shape};
+                    h.run("kpabe.keygen", BenchHarness.params(params), () -> kp.keygen(policy));
+
+                    if (!h.selected("kpabe.decrypt")) {
+                        continue;
+                    }
+                    KPABESecretKey sk = kp.keygen(policy);
+                    KPABECiphertext ct = kp.encrypt(message, PolicyShapes.attributes(policy.leafCount()));
+                    for (DecryptMode mode : DecryptMode.values()) {
+                        h.run("kpabe.decrypt", BenchHarness.params(concat(params, "mode", mode)),
+                                () -> kp.decrypt(policy, ct, sk, mode));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object[] concat(Object[] params, Object... more) {
+        Object[] res = new Object[params.length + more.length];
+        System.arraycopy(params, 0, res, 0, params.length);
+        System.arraycopy(more, 0, res, params.length, more.length);
+        return res;
+    }
+}
@@ -0,0 +1,616 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.Point;
+import it.unisa.dia.gas.plaf.jpbc.field.curve.CurveField;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// 公钥、主密钥、私钥和密文的二进制格式，替代 java.util.Properties + Base64 的文本格式
+//
+// 所有整数均为大端序：
+//   magic       int    0x41424500 ("ABE\0")
+//   version     byte   格式版本，当前为1
+//   type        byte   记录类型，见Type
+//   flags       byte   FLAG_COMPRESSED_G1：G1元素以压缩形式（x坐标加y的符号位）存储
+//   reserved    byte   保留，当前为0
+//   headerLen   int    之后头部的字节数
+//   头部：
+//     fixedCount    int             固定元素个数（如密文的C, C0）
+//     perAttCount   int             每个属性对应的元素个数（如密文的C1, C2）
+//     fixedLen[]    int * fixedCount       每个固定元素的字节长度
+//     perAttLen[]   int * perAttCount      每个属性元素的字节长度
+//     attCount      int             属性个数
+//     atts[]        int * attCount         属性索引表
+//   数据：先是固定元素，然后按属性索引表的顺序依次存放每个属性的元素，均为Element.toBytes()的原始字节
+//
+// 头部给出了所有元素的长度，不需要配对参数就可以计算任意元素在文件中的偏移量，
+// view()利用这一点在映射到内存的文件上只解码需要的元素
+public class ABEBinaryFormat {
+    public static final int MAGIC = 0x41424500;
+    public static final int VERSION = 1;
+    // type a曲线的G1元素默认存储x和y两个坐标，压缩后只存x和1字节的符号位，长度约为原来的一半；
+    // 读取时需要在Fq上开平方恢复y，解码代价更高
+    public static final int FLAG_COMPRESSED_G1 = 0x01;
+    // 读取时接受的上限：单个元素的字节数，以及头部的字节数（决定了属性个数的上限）
+    public static final int MAX_ELEMENT_LEN = 1 << 16;
+    public static final int MAX_HEADER_LEN = 1 << 24;
+
+    public enum Type {
+        CP_PUBLIC_KEY(1, 3, 0), CP_MASTER_KEY(2, 1, 0), CP_SECRET_KEY(3, 2, 1), CP_CIPHERTEXT(4, 2, 2),
+        KP_PUBLIC_KEY(5, 2, 1), KP_MASTER_KEY(6, 1, 1), KP_SECRET_KEY(7, 0, 1), KP_CIPHERTEXT(8, 1, 1),
+        CP_PARTIAL_CIPHERTEXT(9, 2, 0);
+
+        public final int code;
+        // 固定元素的个数，以及每个属性对应的元素个数
+        final int fixedCount;
+        final int perAttCount;
+
+        Type(int code, int fixedCount, int perAttCount) {
+            this.code = code;
+            this.fixedCount = fixedCount;
+            this.perAttCount = perAttCount;
+        }
+
+        // 头部中的perAttCount只能是该类型的取值，在线/离线加密的CP-ABE密文每个属性多一个C3；
+        // 没有属性时写入的perAttCount为0
+        boolean acceptsPerAttCount(int count, int attCount) {
+            if (attCount == 0 && count == 0) {
+                return true;
+            }
+            return count == perAttCount || (this == CP_CIPHERTEXT && count == perAttCount + 1);
+        }
+
+        public static Type fromCode(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("unknown record type: " + code);
+        }
+    }
+
+    // 解析出的一条记录，元素仍为原始字节，由具体类型按对应的群解码
+    public static class Record {
+        public final Type type;
+        public final int flags;
+        public final int[] atts;
+        public final byte[][] fixed;
+        public final byte[][][] perAtt;
+
+        Record(Type type, int flags, int[] atts, byte[][] fixed, byte[][][] perAtt) {
+            this.type = type;
+            this.flags = flags;
+            this.atts = atts;
+            this.fixed = fixed;
+            this.perAtt = perAtt;
+        }
+    }
+
+    // ---------------------------------------------------------------- CP-ABE
+
+    public static void write(CPABEPublicKey pk, OutputStream out) throws IOException {
+        write(pk, out, false);
+    }
+
+    public static void write(CPABEPublicKey pk, OutputStream out, boolean compressG1) throws IOException {
+        writeRecord(out, compressG1, Type.CP_PUBLIC_KEY, new Element[]{pk.g, pk.g_beta, pk.egg_alpha}, new int[0], new Element[0][]);
+    }
+
+    public static CPABEPublicKey readCPABEPublicKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.CP_PUBLIC_KEY);
+        return new CPABEPublicKey(decode(bp.getG1(), record.fixed[0], record.flags),
+                decode(bp.getG1(), record.fixed[1], record.flags), decode(bp.getGT(), record.fixed[2], record.flags));
+    }
+
+    public static void write(CPABEMasterKey msk, OutputStream out) throws IOException {
+        write(msk, out, false);
+    }
+
+    public static void write(CPABEMasterKey msk, OutputStream out, boolean compressG1) throws IOException {
+        writeRecord(out, compressG1, Type.CP_MASTER_KEY, new Element[]{msk.g_alpha}, new int[0], new Element[0][]);
+    }
+
+    public static CPABEMasterKey readCPABEMasterKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.CP_MASTER_KEY);
+        return new CPABEMasterKey(decode(bp.getG1(), record.fixed[0], record.flags));
+    }
+
+    public static void write(CPABESecretKey sk, OutputStream out) throws IOException {
+        write(sk, out, false);
+    }
+
+    public static void write(CPABESecretKey sk, OutputStream out, boolean compressG1) throws IOException {
+        Element[][] perAtt = new Element[sk.userAttList.length][];
+        for (int i = 0; i < sk.userAttList.length; i++) {
+            perAtt[i] = new Element[]{sk.Datt.get(sk.userAttList[i])};
+        }
+        writeRecord(out, compressG1, Type.CP_SECRET_KEY, new Element[]{sk.D, sk.D0}, sk.userAttList, perAtt);
+    }
+
+    public static CPABESecretKey readCPABESecretKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.CP_SECRET_KEY);
+        Map<Integer, Element> Datt = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            Datt.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][0], record.flags));
+        }
+        return new CPABESecretKey(record.atts, decode(bp.getG1(), record.fixed[0], record.flags),
+                decode(bp.getG1(), record.fixed[1], record.flags), Datt);
+    }
+
+    public static void write(CPABECiphertext ct, OutputStream out) throws IOException {
+        write(ct, out, false);
+    }
+
+    public static void write(CPABECiphertext ct, OutputStream out, boolean compressG1) throws IOException {
+        int[] atts = ct.C1.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Element[][] perAtt = new Element[atts.length][];
+        for (int i = 0; i < atts.length; i++) {
+            // 在线/离线加密的密文每个属性多一个Zr上的修正值C3
+            perAtt[i] = ct.isOnline()
+                    ? new Element[]{ct.C1.get(atts[i]), ct.C2.get(atts[i]), ct.C3.get(atts[i])}
+                    : new Element[]{ct.C1.get(atts[i]), ct.C2.get(atts[i])};
+        }
+        writeRecord(out, compressG1, Type.CP_CIPHERTEXT, new Element[]{ct.C, ct.C0}, atts, perAtt);
+    }
+
+    public static CPABECiphertext readCPABECiphertext(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.CP_CIPHERTEXT);
+        Map<Integer, Element> C1 = new LinkedHashMap<>();
+        Map<Integer, Element> C2 = new LinkedHashMap<>();
+        Map<Integer, Element> C3 = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            C1.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][0], record.flags));
+            C2.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][1], record.flags));
+            if (record.perAtt[i].length > 2) {
+                C3.put(record.atts[i], decode(bp.getZr(), record.perAtt[i][2], record.flags));
+            }
+        }
+        return new CPABECiphertext(decode(bp.getGT(), record.fixed[0], record.flags),
+                decode(bp.getG1(), record.fixed[1], record.flags), C1, C2, C3);
+    }
+
+    // 外包解密中服务端返回给客户端的部分解密密文，只有两个GT元素，不受compressG1影响；
+    // 转换私钥与普通私钥结构相同，使用CP_SECRET_KEY格式
+    public static void write(CPABEPartialCiphertext pct, OutputStream out) throws IOException {
+        writeRecord(out, false, Type.CP_PARTIAL_CIPHERTEXT, new Element[]{pct.C, pct.T}, new int[0], new Element[0][]);
+    }
+
+    public static CPABEPartialCiphertext readCPABEPartialCiphertext(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.CP_PARTIAL_CIPHERTEXT);
+        return new CPABEPartialCiphertext(decode(bp.getGT(), record.fixed[0], record.flags),
+                decode(bp.getGT(), record.fixed[1], record.flags));
+    }
+
+    // ---------------------------------------------------------------- KP-ABE
+
+    public static void write(KPABEPublicKey pk, OutputStream out) throws IOException {
+        write(pk, out, false);
+    }
+
+    public static void write(KPABEPublicKey pk, OutputStream out, boolean compressG1) throws IOException {
+        int[] atts = pk.T.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Element[][] perAtt = new Element[atts.length][];
+        for (int i = 0; i < atts.length; i++) {
+            perAtt[i] = new Element[]{pk.T.get(atts[i])};
+        }
+        writeRecord(out, compressG1, Type.KP_PUBLIC_KEY, new Element[]{pk.g, pk.egg_y}, atts, perAtt);
+    }
+
+    public static KPABEPublicKey readKPABEPublicKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.KP_PUBLIC_KEY);
+        Map<Integer, Element> T = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            T.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][0], record.flags));
+        }
+        return new KPABEPublicKey(decode(bp.getG1(), record.fixed[0], record.flags),
+                decode(bp.getGT(), record.fixed[1], record.flags), T);
+    }
+
+    public static void write(KPABEMasterKey msk, OutputStream out) throws IOException {
+        write(msk, out, false);
+    }
+
+    public static void write(KPABEMasterKey msk, OutputStream out, boolean compressG1) throws IOException {
+        int[] atts = msk.t.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Element[][] perAtt = new Element[atts.length][];
+        for (int i = 0; i < atts.length; i++) {
+            perAtt[i] = new Element[]{msk.t.get(atts[i])};
+        }
+        writeRecord(out, compressG1, Type.KP_MASTER_KEY, new Element[]{msk.y}, atts, perAtt);
+    }
+
+    public static KPABEMasterKey readKPABEMasterKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.KP_MASTER_KEY);
+        Map<Integer, Element> t = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            t.put(record.atts[i], decode(bp.getZr(), record.perAtt[i][0], record.flags));
+        }
+        return new KPABEMasterKey(decode(bp.getZr(), record.fixed[0], record.flags), t);
+    }
+
+    public static void write(KPABESecretKey sk, OutputStream out) throws IOException {
+        write(sk, out, false);
+    }
+
+    public static void write(KPABESecretKey sk, OutputStream out, boolean compressG1) throws IOException {
+        int[] atts = sk.D.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Element[][] perAtt = new Element[atts.length][];
+        for (int i = 0; i < atts.length; i++) {
+            perAtt[i] = new Element[]{sk.D.get(atts[i])};
+        }
+        writeRecord(out, compressG1, Type.KP_SECRET_KEY, new Element[0], atts, perAtt);
+    }
+
+    public static KPABESecretKey readKPABESecretKey(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.KP_SECRET_KEY);
+        Map<Integer, Element> D = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            D.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][0], record.flags));
+        }
+        return new KPABESecretKey(D);
+    }
+
+    public static void write(KPABECiphertext ct, OutputStream out) throws IOException {
+        write(ct, out, false);
+    }
+
+    public static void write(KPABECiphertext ct, OutputStream out, boolean compressG1) throws IOException {
+        Element[][] perAtt = new Element[ct.messageAttList.length][];
+        for (int i = 0; i < ct.messageAttList.length; i++) {
+            perAtt[i] = new Element[]{ct.E.get(ct.messageAttList[i])};
+        }
+        writeRecord(out, compressG1, Type.KP_CIPHERTEXT, new Element[]{ct.EP}, ct.messageAttList, perAtt);
+    }
+
+    public static KPABECiphertext readKPABECiphertext(InputStream in, Pairing bp) throws IOException {
+        Record record = readRecord(in, Type.KP_CIPHERTEXT);
+        Map<Integer, Element> E = new LinkedHashMap<>();
+        for (int i = 0; i < record.atts.length; i++) {
+            E.put(record.atts[i], decode(bp.getG1(), record.perAtt[i][0], record.flags));
+        }
+        return new KPABECiphertext(record.atts, decode(bp.getGT(), record.fixed[0], record.flags), E);
+    }
+
+    // ---------------------------------------------------------------- 通用读写
+
+    private static void writeRecord(OutputStream os, boolean compressG1, Type type, Element[] fixed, int[] atts,
+                                    Element[][] perAtt) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        int perAttCount = perAtt.length > 0 ? perAtt[0].length : 0;
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(type.code);
+        out.writeByte(compressG1 ? FLAG_COMPRESSED_G1 : 0);
+        out.writeByte(0);
+        out.writeInt(4 * (3 + fixed.length + perAttCount + atts.length));
+
+        out.writeInt(fixed.length);
+        out.writeInt(perAttCount);
+        for (Element e : fixed) {
+            out.writeInt(encode(e, compressG1).length);
+        }
+        for (int j = 0; j < perAttCount; j++) {
+            out.writeInt(encode(perAtt[0][j], compressG1).length);
+        }
+        out.writeInt(atts.length);
+        for (int att : atts) {
+            out.writeInt(att);
+        }
+
+        for (Element e : fixed) {
+            out.write(encode(e, compressG1));
+        }
+        for (Element[] elements : perAtt) {
+            for (Element e : elements) {
+                out.write(encode(e, compressG1));
+            }
+        }
+        out.flush();
+    }
+
+    // 读取一条记录，expected为null时接受任意类型；
+    // 头部中的个数和长度在分配数组前都先与headerLen及上限比较，损坏或伪造的输入只会得到IOException
+    public static Record readRecord(InputStream is, Type expected) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("not an ABE binary record, bad magic: " + Integer.toHexString(magic));
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported format version: " + version);
+        }
+        Type type = readType(in.readUnsignedByte());
+        if (expected != null && type != expected) {
+            throw new IOException("expected " + expected + " but found " + type);
+        }
+        int flags = in.readUnsignedByte();
+        in.readUnsignedByte();
+        int headerLen = in.readInt();
+        if (headerLen < 12 || headerLen > MAX_HEADER_LEN || headerLen % 4 != 0) {
+            throw new IOException("invalid record header length: " + headerLen);
+        }
+
+        int fixedCount = in.readInt();
+        int perAttCount = in.readInt();
+        checkCounts(type, fixedCount, perAttCount, -1);
+        if (4L * (3 + fixedCount + perAttCount) > headerLen) {
+            throw new IOException("invalid record header");
+        }
+        int[] fixedLen = new int[fixedCount];
+        for (int i = 0; i < fixedCount; i++) {
+            fixedLen[i] = checkElementLength(in.readInt());
+        }
+        int[] perAttLen = new int[perAttCount];
+        for (int j = 0; j < perAttCount; j++) {
+            perAttLen[j] = checkElementLength(in.readInt());
+        }
+        int attCount = in.readInt();
+        if (attCount < 0 || 4L * (3 + fixedCount + perAttCount + (long) attCount) != headerLen) {
+            throw new IOException("invalid record header");
+        }
+        checkCounts(type, fixedCount, perAttCount, attCount);
+        int[] atts = new int[attCount];
+        for (int i = 0; i < attCount; i++) {
+            atts[i] = in.readInt();
+        }
+
+        // 每个元素读完后才分配下一个，截断的输入在readFully处以EOFException结束
+        byte[][] fixed = new byte[fixedCount][];
+        for (int i = 0; i < fixedCount; i++) {
+            fixed[i] = new byte[fixedLen[i]];
+            in.readFully(fixed[i]);
+        }
+        byte[][][] perAtt = new byte[attCount][][];
+        for (int i = 0; i < attCount; i++) {
+            perAtt[i] = new byte[perAttCount][];
+            for (int j = 0; j < perAttCount; j++) {
+                perAtt[i][j] = new byte[perAttLen[j]];
+                in.readFully(perAtt[i][j]);
+            }
+        }
+        return new Record(type, flags, atts, fixed, perAtt);
+    }
+
+    private static Type readType(int code) throws IOException {
+        try {
+            return Type.fromCode(code);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // 固定元素个数和每个属性的元素个数必须与记录类型一致，因此都是很小的数，之后的数组分配和偏移量计算不会溢出；
+    // attCount为-1表示尚未读出属性个数
+    private static void checkCounts(Type type, int fixedCount, int perAttCount, int attCount) throws IOException {
+        boolean ok = fixedCount == type.fixedCount && (attCount < 0
+                ? type.acceptsPerAttCount(perAttCount, 0) || type.acceptsPerAttCount(perAttCount, 1)
+                : type.acceptsPerAttCount(perAttCount, attCount));
+        if (!ok) {
+            throw new IOException("unexpected element counts for " + type + ": " + fixedCount + ", " + perAttCount);
+        }
+    }
+
+    private static int checkElementLength(int len) throws IOException {
+        if (len < 0 || len > MAX_ELEMENT_LEN) {
+            throw new IOException("invalid element length: " + len);
+        }
+        return len;
+    }
+
+    // 在ByteBuffer（通常是映射到内存的文件）中从offset处解析一条记录的头部，元素不复制也不解码，
+    // 由调用方按需取出；只使用绝对位置的读取，不改变buf的position，可以被多个线程同时使用
+    public static RecordView view(ByteBuffer buf, int offset, Type expected) throws IOException {
+        if (offset < 0 || offset > buf.limit() - 16) {
+            throw new IOException("record at " + offset + " exceeds buffer limit " + buf.limit());
+        }
+        int magic = buf.getInt(offset);
+        if (magic != MAGIC) {
+            throw new IOException("not an ABE binary record, bad magic: " + Integer.toHexString(magic));
+        }
+        int version = buf.get(offset + 4) & 0xff;
+        if (version != VERSION) {
+            throw new IOException("unsupported format version: " + version);
+        }
+        Type type = readType(buf.get(offset + 5) & 0xff);
+        if (expected != null && type != expected) {
+            throw new IOException("expected " + expected + " but found " + type);
+        }
+        int flags = buf.get(offset + 6) & 0xff;
+        int headerLen = buf.getInt(offset + 8);
+        int header = offset + 12;
+        if (headerLen < 12 || headerLen > buf.limit() - header) {
+            throw new IOException("invalid record header length: " + headerLen);
+        }
+
+        int fixedCount = buf.getInt(header);
+        int perAttCount = buf.getInt(header + 4);
+        checkCounts(type, fixedCount, perAttCount, -1);
+        if (4L * (3 + fixedCount + perAttCount) > headerLen) {
+            throw new IOException("invalid record header");
+        }
+        // 每个长度先检查再累加，偏移量都用long计算，伪造的长度不会使偏移量溢出为负数而通过下面的越界检查
+        int pos = header + 8;
+        long[] fixedStart = new long[fixedCount];
+        int[] fixedLen = new int[fixedCount];
+        long data = header + (long) headerLen;
+        for (int i = 0; i < fixedCount; i++, pos += 4) {
+            fixedStart[i] = data;
+            fixedLen[i] = checkElementLength(buf.getInt(pos));
+            data += fixedLen[i];
+        }
+        int[] perAttOffset = new int[perAttCount];
+        int[] perAttLen = new int[perAttCount];
+        long stride = 0;
+        for (int j = 0; j < perAttCount; j++, pos += 4) {
+            perAttOffset[j] = (int) stride;
+            perAttLen[j] = checkElementLength(buf.getInt(pos));
+            stride += perAttLen[j];
+        }
+        int attCount = buf.getInt(pos);
+        pos += 4;
+        if (attCount < 0 || 4L * (3 + fixedCount + perAttCount + (long) attCount) != headerLen) {
+            throw new IOException("invalid record header");
+        }
+        checkCounts(type, fixedCount, perAttCount, attCount);
+        long end = data + stride * attCount;
+        if (end > buf.limit()) {
+            throw new IOException("record at " + offset + " exceeds buffer limit " + buf.limit());
+        }
+        // end不超过buf.limit()，之后所有偏移量（包括perAtt中的attIndex * stride）都在int范围内
+        int[] fixedOffset = new int[fixedCount];
+        for (int i = 0; i < fixedCount; i++) {
+            fixedOffset[i] = (int) fixedStart[i];
+        }
+        int[] atts = new int[attCount];
+        for (int i = 0; i < attCount; i++, pos += 4) {
+            atts[i] = buf.getInt(pos);
+        }
+        return new RecordView(buf, offset, (int) end - offset, type, flags, atts, fixedOffset, fixedLen,
+                (int) data, (int) stride, perAttOffset, perAttLen);
+    }
+
+    // view()解析出的一条记录：头部已经读出，元素在需要时才从buf中复制并解码
+    public static class RecordView {
+        public final Type type;
+        public final int flags;
+        public final int[] atts;
+
+        private final ByteBuffer buf;
+        private final int offset;
+        private final int length;
+        private final int[] fixedOffset;
+        private final int[] fixedLen;
+        private final int perAttBase;
+        private final int stride;
+        private final int[] perAttOffset;
+        private final int[] perAttLen;
+
+        RecordView(ByteBuffer buf, int offset, int length, Type type, int flags, int[] atts, int[] fixedOffset,
+                   int[] fixedLen, int perAttBase, int stride, int[] perAttOffset, int[] perAttLen) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+            this.type = type;
+            this.flags = flags;
+            this.atts = atts;
+            this.fixedOffset = fixedOffset;
+            this.fixedLen = fixedLen;
+            this.perAttBase = perAttBase;
+            this.stride = stride;
+            this.perAttOffset = perAttOffset;
+            this.perAttLen = perAttLen;
+        }
+
+        // 每个属性对应的元素个数
+        public int perAttCount() {
+            return perAttLen.length;
+        }
+
+        // 整条记录（含magic）的字节数
+        public int length() {
+            return length;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        // 属性att在属性索引表中的位置，不存在时返回-1
+        public int indexOf(int att) {
+            for (int i = 0; i < atts.length; i++) {
+                if (atts[i] == att) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // 第i个固定元素，按field解码
+        public Element fixed(int i, Field<?> field) {
+            return decode(field, bytes(fixedOffset[i], fixedLen[i]), flags);
+        }
+
+        // 属性索引表中第attIndex个属性的第j个元素，按field解码
+        public Element perAtt(int attIndex, int j, Field<?> field) {
+            return decode(field, bytes(perAttBase + attIndex * stride + perAttOffset[j], perAttLen[j]), flags);
+        }
+
+        private byte[] bytes(int position, int len) {
+            byte[] bytes = new byte[len];
+            buf.get(position, bytes);
+            return bytes;
+        }
+    }
+
+    // 只有椭圆曲线上的点（G1）会被压缩，GT和Zr元素总是以原始字节存储
+    private static byte[] encode(Element e, boolean compressG1) {
+        if (compressG1 && e instanceof Point && e.getField() instanceof CurveField) {
+            return ((Point<?>) e).toBytesCompressed();
+        }
+        return e.toBytes();
+    }
+
+    private static Element decode(Field<?> field, byte[] bytes, int flags) {
+        if ((flags & FLAG_COMPRESSED_G1) != 0 && field instanceof CurveField) {
+            Element e = field.newElement();
+            ((Point<?>) e).setFromBytesCompressed(bytes);
+            return e.getImmutable();
+        }
+        return field.newElementFromBytes(bytes).getImmutable();
+    }
+
+    // ---------------------------------------------------------------- properties文件转换
+
+    // 把原有的properties格式文件转换为二进制格式
+    public static void convertPropertiesFile(Type type, Pairing bp, String propFileName, String binFileName) throws IOException {
+        convertPropertiesFile(type, bp, propFileName, binFileName, false);
+    }
+
+    public static void convertPropertiesFile(Type type, Pairing bp, String propFileName, String binFileName,
+                                             boolean compressG1) throws IOException {
+        Properties prop = new Properties();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(propFileName))) {
+            prop.load(in);
+        }
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(binFileName))) {
+            switch (type) {
+                case CP_PUBLIC_KEY: write(CPABEPublicKey.fromProperties(prop, bp), out, compressG1); break;
+                case CP_MASTER_KEY: write(CPABEMasterKey.fromProperties(prop, bp), out, compressG1); break;
+                case CP_SECRET_KEY: write(CPABESecretKey.fromProperties(prop, bp), out, compressG1); break;
+                case CP_CIPHERTEXT: write(CPABECiphertext.fromProperties(prop, bp), out, compressG1); break;
+                case KP_PUBLIC_KEY: write(KPABEPublicKey.fromProperties(prop, bp), out, compressG1); break;
+                case KP_MASTER_KEY: write(KPABEMasterKey.fromProperties(prop, bp), out, compressG1); break;
+                case KP_SECRET_KEY: write(KPABESecretKey.fromProperties(prop, bp), out, compressG1); break;
+                case KP_CIPHERTEXT: write(KPABECiphertext.fromProperties(prop, bp), out, compressG1); break;
+                default: throw new IllegalArgumentException("no properties format for " + type);
+            }
+        }
+    }
+
+    // 用法：ABEBinaryFormat <类型，如CP_CIPHERTEXT> <配对参数文件> <properties文件> <二进制文件> [compress]
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 && args.length != 5) {
+            System.out.println("usage: ABEBinaryFormat <type> <pairingParametersFile> <in.properties> <out.bin> [compress]");
+            return;
+        }
+        Pairing bp = ABEUtils.getPairing(args[1]);
+        convertPropertiesFile(Type.valueOf(args[0]), bp, args[2], args[3], args.length == 5 && args[4].equals("compress"));
+        System.out.println(args[2] + " -> " + args[3]);
+    }
+}
@@ -0,0 +1,70 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+
+public class ABEUtils {
+
+    // 选择群运算后端的系统属性：java（默认，jpbc-plaf的纯Java实现）或pbc（通过jpbc-pbc调用本地PBC库）
+    public static final String BACKEND_PROPERTY = "abe.backend";
+
+    // 按abe.backend的设置创建Pairing，要求使用pbc而本地库不可用时直接报错，避免测出来的其实是纯Java实现的耗时
+    public static Pairing getPairing(String pairingParametersFileName) {
+        String backend = System.getProperty(BACKEND_PROPERTY, "java");
+        boolean usePBC = "pbc".equalsIgnoreCase(backend);
+        if (!usePBC && !"java".equalsIgnoreCase(backend)) {
+            throw new IllegalArgumentException("unknown " + BACKEND_PROPERTY + ": " + backend);
+        }
+        PairingFactory factory = PairingFactory.getInstance();
+        if (usePBC && !factory.isPBCAvailable()) {
+            throw new IllegalStateException("PBC backend requested but jpbc-pbc or the native PBC library is not available");
+        }
+        factory.setUsePBCWhenPossible(usePBC);
+        return PairingFactory.getPairing(pairingParametersFileName);
+    }
+
+    // 群元素与Base64字符串之间的转换，与原先properties文件中的存储格式保持一致
+    public static String toBase64(Element e) {
+        return Base64.getEncoder().withoutPadding().encodeToString(e.toBytes());
+    }
+
+    public static Element fromBase64(Field<?> field, String s) {
+        return field.newElementFromBytes(Base64.getDecoder().decode(s)).getImmutable();
+    }
+
+    // 将Arrays.toString生成的"[1, 2, 3]"形式的字符串恢复为int[]
+    public static int[] parseIntArray(String s) {
+        String body = s.substring(1, s.length()-1).trim();
+        if (body.isEmpty()) {
+            return new int[0];
+        }
+        return Arrays.stream(body.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    // 读取properties文件，失败时抛出IOException，而不是像CPABE/KPABE.loadPropFromFile那样退出进程
+    public static Properties loadProperties(String fileName) throws IOException {
+        Properties prop = new Properties();
+        try (InputStream in = new FileInputStream(fileName)) {
+            prop.load(in);
+        }
+        return prop;
+    }
+
+    // 供不声明IOException的接口（如CPABEEngine.load）使用
+    public static Properties loadPropertiesUnchecked(String fileName) {
+        try {
+            return loadProperties(fileName);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(fileName + " load failed", e);
+        }
+    }
+}
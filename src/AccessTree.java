@@ -1,11 +1,12 @@
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
-import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.IntFunction;
 
 import static java.lang.Integer.valueOf;
 
@@ -24,30 +25,71 @@ public class AccessTree {
     }
 
     //计算由coef为系数确定的多项式qx在点index处的值，注意多项式计算在群Zr上进行
+    //按Horner形式 q(x) = (...(coef[d-1]*x + coef[d-2])*x + ...)*x + coef[0] 求值，
+    //只需要d-1次乘法和加法，所有运算都在同一个可变的累加器上原地进行，不再对每个系数做一次powZn
     public static Element qx(Element index, Element[] coef, Pairing bp){
-        Element res = coef[0].getImmutable();
-        for (int i = 1; i < coef.length; i++){
-            Element exp = bp.getZr().newElement(i).getImmutable();
-            //index一定要使用duplicate复制使用，因为index在每一次循环中都要使用，如果不加duplicte，index的值会发生变化
-            res = res.add(coef[i].mul(index.duplicate().powZn(exp)));
+        Element res = coef[coef.length - 1].duplicate();
+        for (int i = coef.length - 2; i >= 0; i--){
+            res.mul(index).add(coef[i]);
         }
-        return res;
+        return res.getImmutable();
     }
 
     //拉格朗日因子计算 i是集合S中的某个元素，x是目标点的值
+    //分子prod(x-j)和分母prod(i-j)分别在两个可变累加器上原地连乘，最后只做一次除法，而不是每个j做一次
     public static Element lagrange(int i, int[] S, int x, Pairing bp) {
-        Element res = bp.getZr().newOneElement().getImmutable();
-        Element iElement = bp.getZr().newElement(i).getImmutable();
-        Element xElement = bp.getZr().newElement(x).getImmutable();
+        Element numerator = bp.getZr().newOneElement();
+        Element denominator = bp.getZr().newOneElement();
         for (int j : S) {
             if (i != j) {
-                //注意：在循环中重复使用的项一定要用duplicate复制出来使用
-                //这儿xElement和iElement重复使用，但因为前面已经getImmutable所以可以不用duplicate
-                Element numerator = xElement.sub(bp.getZr().newElement(j));
-                Element denominator = iElement.sub(bp.getZr().newElement(j));
-                res = res.mul(numerator.div(denominator));
+                numerator.mul(x - j);
+                denominator.mul(i - j);
             }
         }
+        return numerator.div(denominator).getImmutable();
+    }
+
+    //一次算出集合S中每个元素的拉格朗日因子，res[t]对应S[t]
+    //各元素的分子prod(x-j)由前缀积和后缀积得到；分母prod(S[t]-j)用Montgomery批量求逆：
+    //先求所有分母的前缀积，只对总乘积求一次逆，再从后往前逐个剥离出每个分母的逆
+    //整个集合只需要一次求逆，逐个调用lagrange则需要|S|次
+    public static Element[] lagrangeCoefficients(int[] S, int x, Pairing bp) {
+        int k = S.length;
+        Element[] res = new Element[k];
+        Element[] denominators = new Element[k];
+        Element[] denominatorPrefix = new Element[k];
+        Element[] numeratorPrefix = new Element[k];
+        Element denominatorProd = bp.getZr().newOneElement();
+        Element numeratorProd = bp.getZr().newOneElement();
+        for (int t = 0; t < k; t++) {
+            // 分母的各个因子都是小整数，先在long中累乘，快要溢出时才乘入Zr元素，减少大数乘法和取模的次数
+            Element d = bp.getZr().newOneElement();
+            long acc = 1;
+            for (int j : S) {
+                if (j != S[t]) {
+                    long f = (long) S[t] - j;
+                    if (Math.abs(acc) > Long.MAX_VALUE / Math.abs(f)) {
+                        d.mul(BigInteger.valueOf(acc));
+                        acc = 1;
+                    }
+                    acc *= f;
+                }
+            }
+            denominators[t] = d.mul(BigInteger.valueOf(acc));
+            denominatorPrefix[t] = denominatorProd.duplicate();
+            numeratorPrefix[t] = numeratorProd.duplicate();
+            denominatorProd.mul(d);
+            numeratorProd.mul(x - S[t]);
+        }
+        // inv = 1/(d_0 d_1 ... d_t)，每一步乘上d_t后变为 1/(d_0 ... d_(t-1))
+        Element inv = denominatorProd.invert();
+        Element numeratorSuffix = bp.getZr().newOneElement();
+        for (int t = k - 1; t >= 0; t--) {
+            Element delta = denominatorPrefix[t].mul(inv).mul(numeratorPrefix[t]).mul(numeratorSuffix);
+            res[t] = delta.getImmutable();
+            inv.mul(denominators[t]);
+            numeratorSuffix.mul(x - S[t]);
+        }
         return res;
     }
 
@@ -85,8 +127,85 @@ public class AccessTree {
         }
     }
 
+    // 与nodeShare相同的秘密共享过程，但不修改访问树，而是把每个节点的秘密分片写入以节点索引为下标的数组
+    // 访问树因此可以被多个加密操作同时使用
+    public static Element[] nodeShares(Node[] nodes, Element secret, Pairing bp) {
+        Element[] shares = new Element[nodes.length];
+        nodeShares(Policy.of(nodes), secret, shares, bp);
+        return shares;
+    }
+
+    // 对不可变的Policy进行秘密共享，shares通常是PolicyScratch.share
+    public static void nodeShares(Policy policy, Element secret, Element[] shares, Pairing bp) {
+        shares[0] = secret;
+        nodeShare(policy, 0, shares, bp);
+    }
+
+    private static void nodeShare(Policy policy, int index, Element[] shares, Pairing bp) {
+        if (!policy.isLeaf(index)){
+            Element[] coef = randomP(policy.threshold(index), shares[index], bp);
+            childShares(policy, index, coef, shares, bp);
+            for (int j = 0; j < policy.childCount(index); j++) {
+                nodeShare(policy, policy.child(index, j), shares, bp);
+            }
+        }
+    }
+
+    // 计算门index的每个子节点的秘密分片q(child)，写入shares
+    // 编译得到的策略按层序排列，同一个门的子节点索引（即横坐标）是连续的整数x0, x0+1, ...，
+    // 子节点个数多于门限时用前向差分在相邻横坐标之间递推：先用Horner求出前d个点的值并原地转换为各阶差分，
+    // 之后每个子节点只需要d-1次加法。宽门限门（如50-of-100）的所有子节点因此共用同一张差分表，
+    // 而不是每个子节点都做d-1次乘法
+    public static void childShares(Policy policy, int index, Element[] coef, Element[] shares, Pairing bp) {
+        int m = policy.childCount(index);
+        int d = coef.length;
+        int x0 = policy.child(index, 0);
+        if (d == 1) {
+            // 门限为1时多项式是常数，每个子节点的分片都等于当前节点的秘密
+            for (int j = 0; j < m; j++) {
+                shares[policy.child(index, j)] = coef[0].getImmutable();
+            }
+            return;
+        }
+        boolean consecutive = m > d;
+        for (int j = 1; consecutive && j < m; j++) {
+            consecutive = policy.child(index, j) == x0 + j;
+        }
+        Element x = bp.getZr().newElement();
+        if (!consecutive) {
+            for (int j = 0; j < m; j++) {
+                int child = policy.child(index, j);
+                shares[child] = qx(x.set(child), coef, bp);
+            }
+            return;
+        }
+        // 转换完成后diff[k]是q在x0处的k阶前向差分，diff[0] = q(x0)，diff[d-1]为常数
+        Element[] diff = new Element[d];
+        for (int k = 0; k < d; k++) {
+            diff[k] = qx(x.set(x0 + k), coef, bp).duplicate();
+        }
+        for (int k = 1; k < d; k++) {
+            for (int i = d - 1; i >= k; i--) {
+                diff[i].sub(diff[i - 1]);
+            }
+        }
+        shares[x0] = diff[0].getImmutable();
+        for (int j = 1; j < m; j++) {
+            // 差分表从横坐标x0+j-1前进到x0+j
+            for (int k = 0; k < d - 1; k++) {
+                diff[k].add(diff[k + 1]);
+            }
+            shares[x0 + j] = diff[0].getImmutable();
+        }
+    }
+
     // 恢复秘密
     public static boolean nodeRecover(Node[] nodes, Node n,  int[] atts, Pairing bp) {
+        return nodeRecover(nodes, n, AttributeSet.of(atts), bp);
+    }
+
+    // 属性列表预先转换为AttributeSet，整个递归过程中判断叶子属性是否属于属性列表都是O(1)
+    public static boolean nodeRecover(Node[] nodes, Node n, AttributeSet atts, Pairing bp) {
         if (!n.isLeaf()) {
             // 对于内部节点，维护一个子节点索引列表，用于秘密恢复。
             List<Integer> validChildrenList = new ArrayList<Integer>();
@@ -109,25 +228,174 @@ public class AccessTree {
                 validChildren = validChildrenList.stream().mapToInt(i->i).toArray();
                 // 利用拉格朗日差值恢复秘密
                 Element secret = bp.getZr().newZeroElement().getImmutable();
-                for (int i : validChildren) {
-                    Element delta = lagrange(i, validChildren, 0, bp);  //计算拉个朗日插值因子
-                    secret = secret.add(nodes[i].secretShare.duplicate().mul(delta));
+                Element[] deltas = lagrangeCoefficients(validChildren, 0, bp);  //计算拉个朗日插值因子
+                for (int t = 0; t < validChildren.length; t++) {
+                    secret = secret.add(nodes[validChildren[t]].secretShare.duplicate().mul(deltas[t]));
                 }
                 n.secretShare = secret;
             }
         }
         else {
-            if (Arrays.stream(atts).boxed().collect(Collectors.toList()).contains(n.att)){
+            if (atts.contains(n.att)){
                 n.valid = true;
             }
         }
         return n.valid;
     }
 
+    // 与CPABE/KPABE中的nodeRecover相同的逐层恢复过程（在GT上以拉格朗日因子为指数连乘），但不修改访问树，
+    // 恢复出的秘密值和是否可恢复写入scratch；叶子节点满足时才调用leafSecret计算该叶子的秘密值（即配对结果）
+    public static boolean recover(Policy policy, int index, AttributeSet atts, IntFunction<Element> leafSecret,
+                                  PolicyScratch scratch, Pairing bp) {
+        return recover(policy, index, atts, leafSecret, scratch, null, bp);
+    }
+
+    // lagrangeCache不为null时，每个门的拉格朗日因子从缓存中获取
+    public static boolean recover(Policy policy, int index, AttributeSet atts, IntFunction<Element> leafSecret,
+                                  PolicyScratch scratch, LagrangeCache lagrangeCache, Pairing bp) {
+        if (policy.isLeaf(index)) {
+            if (atts.contains(policy.att(index))) {
+                scratch.share[index] = leafSecret.apply(index);
+                scratch.valid[index] = true;
+            }
+            return scratch.valid[index];
+        }
+        int k = policy.threshold(index);
+        int[] validChildren = new int[k];
+        int count = 0;
+        // 满足条件的子节点个数达到门限值后不再计算剩余的子节点
+        for (int j = 0; j < policy.childCount(index) && count < k; j++) {
+            int child = policy.child(index, j);
+            if (recover(policy, child, atts, leafSecret, scratch, lagrangeCache, bp)) {
+                validChildren[count++] = child;
+            }
+        }
+        if (count < k) {
+            return false;
+        }
+        Element secret = bp.getGT().newOneElement();
+        Element[] deltas = coefficients(validChildren, lagrangeCache, bp);
+        for (int t = 0; t < k; t++) {
+            secret.mul(scratch.share[validChildren[t]].duplicate().powZn(deltas[t]));
+        }
+        scratch.share[index] = secret.getImmutable();
+        scratch.valid[index] = true;
+        return true;
+    }
+
+    // 在recover之后，沿recover选中的同一组子节点在Zr上做拉格朗日插值，返回 sum(delta_i leafValue(i))，
+    // delta_i为参与恢复的叶子i各层拉格朗日因子之积；index节点必须已由recover恢复（scratch.valid[index]为true）
+    // 未满足的子节点和达到门限后未计算的子节点在scratch中都不是valid，因此每个门上valid的子节点恰好是选中的门限个
+    public static Element combine(Policy policy, int index, IntFunction<Element> leafValue, PolicyScratch scratch,
+                                  LagrangeCache lagrangeCache, Pairing bp) {
+        if (policy.isLeaf(index)) {
+            return leafValue.apply(index);
+        }
+        int k = policy.threshold(index);
+        int[] validChildren = new int[k];
+        int count = 0;
+        for (int j = 0; j < policy.childCount(index) && count < k; j++) {
+            int child = policy.child(index, j);
+            if (scratch.valid[child]) {
+                validChildren[count++] = child;
+            }
+        }
+        Element sum = bp.getZr().newZeroElement();
+        Element[] deltas = coefficients(validChildren, lagrangeCache, bp);
+        for (int t = 0; t < k; t++) {
+            sum.add(combine(policy, validChildren[t], leafValue, scratch, lagrangeCache, bp).duplicate().mul(deltas[t]));
+        }
+        return sum.getImmutable();
+    }
+
+    // 扁平化的秘密恢复：先只根据属性判断访问树是否满足（不做任何配对），并为每个内部节点选出代价最小的一组子节点，
+    // 然后自顶向下把每一层的拉格朗日因子在Zr中相乘，得到每个参与恢复的叶子节点的组合系数
+    // 这样根节点的秘密 = 各叶子节点的秘密分片乘以其组合系数之和，与逐层恢复的结果相同
+    // 返回 叶子节点索引 -> 组合系数，访问树不满足时返回null
+    public static Map<Integer, Element> leafCoefficients(Node[] nodes, int[] atts, Pairing bp) {
+        return leafCoefficients(Policy.of(nodes), AttributeSet.of(atts), bp);
+    }
+
+    public static Map<Integer, Element> leafCoefficients(Policy policy, AttributeSet atts, Pairing bp) {
+        return leafCoefficients(policy, atts, null, bp);
+    }
+
+    // lagrangeCache不为null时，每个门的拉格朗日因子从缓存中获取
+    public static Map<Integer, Element> leafCoefficients(Policy policy, AttributeSet atts, LagrangeCache lagrangeCache,
+                                                         Pairing bp) {
+        // chosen[i]为内部节点i选中的子节点索引
+        int[][] chosen = new int[policy.size()][];
+        if (chooseChildren(policy, 0, atts, chosen) < 0) {
+            return null;
+        }
+        Map<Integer, Element> coefs = new LinkedHashMap<>();
+        pushCoefficients(policy, 0, bp.getZr().newOneElement().getImmutable(), chosen, coefs, lagrangeCache, bp);
+        return coefs;
+    }
+
+    // 满足访问树所需的最少叶子节点个数（每个叶子对应固定次数的配对），不满足时返回-1
+    public static int minLeafCost(Node[] nodes, int[] atts) {
+        return minLeafCost(Policy.of(nodes), AttributeSet.of(atts));
+    }
+
+    public static int minLeafCost(Policy policy, AttributeSet atts) {
+        return chooseChildren(policy, 0, atts, new int[policy.size()][]);
+    }
+
+    // 代价规划：返回以index为根的子树被满足时最少需要的叶子个数，不满足时返回-1
+    // 与nodeRecover按子节点顺序选取最先满足的gate[0]个子节点不同，这里在所有可满足的子节点中选取代价最小的gate[0]个，
+    // 代价相同时保持子节点的原有顺序
+    private static int chooseChildren(Policy policy, int index, AttributeSet atts, int[][] chosen) {
+        if (policy.isLeaf(index)) {
+            return atts.contains(policy.att(index)) ? 1 : -1;
+        }
+        int k = policy.threshold(index);
+        int[] costs = new int[policy.childCount(index)];
+        List<Integer> validChildrenList = new ArrayList<Integer>();
+        for (int j=0; j<costs.length; j++){
+            costs[j] = chooseChildren(policy, policy.child(index, j), atts, chosen);
+            if (costs[j] >= 0) {
+                validChildrenList.add(j);
+            }
+        }
+        if (validChildrenList.size() < k) {
+            return -1;
+        }
+        // List.sort是稳定排序
+        validChildrenList.sort((a, b) -> Integer.compare(costs[a], costs[b]));
+        int[] validChildren = new int[k];
+        int cost = 0;
+        for (int i = 0; i < k; i++) {
+            int j = validChildrenList.get(i);
+            validChildren[i] = policy.child(index, j);
+            cost += costs[j];
+        }
+        chosen[index] = validChildren;
+        return cost;
+    }
+
+    private static void pushCoefficients(Policy policy, int index, Element coef, int[][] chosen, Map<Integer, Element> coefs,
+                                         LagrangeCache lagrangeCache, Pairing bp) {
+        if (policy.isLeaf(index)) {
+            coefs.put(index, coef);
+            return;
+        }
+        int[] children = chosen[index];
+        Element[] deltas = coefficients(children, lagrangeCache, bp);
+        for (int t = 0; t < children.length; t++) {
+            pushCoefficients(policy, children[t], coef.mul(deltas[t]).getImmutable(), chosen, coefs, lagrangeCache, bp);
+        }
+    }
+
+    // 以0为目标点的拉格朗日因子，res[t]对应S[t]
+    private static Element[] coefficients(int[] S, LagrangeCache lagrangeCache, Pairing bp) {
+        return lagrangeCache == null ? lagrangeCoefficients(S, 0, bp) : lagrangeCache.get(S, 0);
+    }
+
 
     public static void main(String[] args) {
 
-        Pairing bp = PairingFactory.getPairing("a.properties");
+        Pairing bp = ABEUtils.getPairing("a.properties");
 
         Node[] nodes = new Node[7];
         nodes[0] = new Node(new int[]{2,3}, new int[]{1,2,3});
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// 字符串属性（如 dept:finance）到紧凑整数编号的字典，编号从FIRST_ID开始按首次出现的顺序分配
+// 访问树、属性列表、密钥和密文内部仍然使用整数属性，字典只负责两者之间的转换
+// 同一个系统中的所有参与方必须使用同一份字典（可通过toProperties/fromProperties保存和加载），否则同一字符串会得到不同编号
+//
+// 整数形式的字符串（如 "2024"）不进入字典，直接作为整数属性2024，策略编译器和keygen/encrypt/withAttributes的字符串重载
+// 都通过resolve转换，因此同一个字符串在策略和属性列表中总是得到同一个编号；
+// 字典编号与整数属性的取值范围不相交，整数属性必须小于FIRST_ID，字典中的字符串属性不会与整数属性混淆
+public class AttributeDictionary {
+    // 字典分配的第一个编号，[FIRST_ID, Integer.MAX_VALUE]保留给字典
+    public static final int FIRST_ID = 1 << 30;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    // names.get(id - FIRST_ID)为编号id对应的字符串属性
+    private final List<String> names = new ArrayList<>();
+
+    // 返回属性的编号，属性第一次出现时为其分配新编号；att按原样作为字典中的字符串，不区分是否为整数形式
+    public synchronized int intern(String att) {
+        Integer id = ids.get(att);
+        if (id == null) {
+            if (names.size() == Integer.MAX_VALUE - FIRST_ID + 1) {
+                throw new IllegalStateException("attribute dictionary is full");
+            }
+            id = FIRST_ID + names.size();
+            names.add(att);
+            ids.put(att, id);
+        }
+        return id;
+    }
+
+    public int[] intern(String[] atts) {
+        int[] res = new int[atts.length];
+        for (int i = 0; i < atts.length; i++) {
+            res[i] = intern(atts[i]);
+        }
+        return res;
+    }
+
+    // 字符串属性到属性编号的统一转换：整数形式的字符串得到该整数，其余字符串通过intern得到字典编号
+    // 整数属性不能为0（0在访问树中表示内部节点），也不能落在保留给字典编号的范围内
+    public int resolve(String att) {
+        if (isInteger(att)) {
+            int value;
+            try {
+                value = Integer.parseInt(att);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("integer attribute out of range: " + att, e);
+            }
+            if (value == 0) {
+                throw new IllegalArgumentException("attribute 0 is reserved");
+            }
+            if (isDictionaryId(value)) {
+                throw new IllegalArgumentException("integer attribute " + value + " is in the range reserved for dictionary ids");
+            }
+            return value;
+        }
+        return intern(att);
+    }
+
+    public int[] resolve(String[] atts) {
+        int[] res = new int[atts.length];
+        for (int i = 0; i < atts.length; i++) {
+            res[i] = resolve(atts[i]);
+        }
+        return res;
+    }
+
+    public static boolean isInteger(String att) {
+        return att.matches("-?\\d+");
+    }
+
+    public static boolean isDictionaryId(int att) {
+        return att >= FIRST_ID;
+    }
+
+    // 属性尚未登记时返回0；整数形式的字符串返回该整数
+    public synchronized int id(String att) {
+        if (isInteger(att)) {
+            return resolve(att);
+        }
+        Integer id = ids.get(att);
+        return id == null ? 0 : id;
+    }
+
+    public synchronized String name(int id) {
+        if (id < FIRST_ID || id - FIRST_ID >= names.size()) {
+            throw new IllegalArgumentException("unknown attribute id: " + id);
+        }
+        return names.get(id - FIRST_ID);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // 以字符串属性构造访问树的叶子节点
+    public Node leaf(String att) {
+        return new Node(resolve(att));
+    }
+
+    public synchronized Properties toProperties() {
+        Properties dictProp = new Properties();
+        for (int i = 0; i < names.size(); i++) {
+            dictProp.setProperty(Integer.toString(FIRST_ID + i), names.get(i));
+        }
+        return dictProp;
+    }
+
+    public static AttributeDictionary fromProperties(Properties dictProp) {
+        AttributeDictionary dict = new AttributeDictionary();
+        int n = dictProp.size();
+        for (int i = 0; i < n; i++) {
+            int id = FIRST_ID + i;
+            String att = dictProp.getProperty(Integer.toString(id));
+            if (att == null) {
+                throw new IllegalArgumentException("attribute dictionary is missing id " + id);
+            }
+            if (dict.intern(att) != id) {
+                throw new IllegalArgumentException("duplicate attribute in dictionary: " + att);
+            }
+        }
+        return dict;
+    }
+}
@@ -0,0 +1,115 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 属性 -> H(属性)（哈希到G1上的不可变元素）的有界缓存，按LRU淘汰，可被多个线程共享
+// 属性全集通常只有几千个且反复出现，而每次哈希到椭圆曲线都需要一次SHA-1和一次映射到曲线点的计算
+public class AttributeHashCache {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Pairing bp;
+    private final int capacity;
+    // accessOrder为true的LinkedHashMap即LRU，所有访问都在synchronized(entries)中进行
+    private final LinkedHashMap<Integer, Element> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public AttributeHashCache(Pairing bp) {
+        this(bp, DEFAULT_CAPACITY);
+    }
+
+    public AttributeHashCache(Pairing bp, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.bp = bp;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Integer, Element>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Element> eldest) {
+                return size() > AttributeHashCache.this.capacity;
+            }
+        };
+    }
+
+    public Element get(int att) {
+        synchronized (entries) {
+            Element h = entries.get(att);
+            if (h != null) {
+                hits.incrementAndGet();
+                return h;
+            }
+        }
+        misses.incrementAndGet();
+        // 哈希计算放在锁外，两个线程同时未命中同一属性时会各算一次，结果相同
+        Element h = hash(bp, att);
+        synchronized (entries) {
+            entries.put(att, h);
+        }
+        return h;
+    }
+
+    // 预先计算一批属性的哈希值，不计入命中/未命中次数
+    public void warmUp(int[] atts) {
+        for (int att : atts) {
+            synchronized (entries) {
+                if (entries.containsKey(att)) {
+                    continue;
+                }
+            }
+            Element h = hash(bp, att);
+            synchronized (entries) {
+                entries.put(att, h);
+            }
+        }
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    // H(att)：属性的十进制字符串先做SHA-1，再映射到G1上
+    public static Element hash(Pairing bp, int att) {
+        byte[] idHash;
+        try {
+            idHash = CPABE.sha1(Integer.toString(att));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return bp.getG1().newElementFromHash(idHash, 0, idHash.length).getImmutable();
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeHashCache{size=" + size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+}
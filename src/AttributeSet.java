@@ -0,0 +1,77 @@
+import java.util.Arrays;
+
+// 不装箱的整数属性集合，每次解密/秘密恢复时由属性列表构造一次，之后判断叶子属性是否属于集合为O(1)且不分配内存
+// 属性编号都不大时使用位图，否则（如字典分配的编号，从AttributeDictionary.FIRST_ID开始）使用开放寻址的哈希表
+public class AttributeSet {
+    // 位图能表示的最大属性编号，对应8KB的位图
+    private static final int MAX_BITMAP_ATT = 1 << 16;
+
+    private final long[] bits;
+    // 开放寻址哈希表，EMPTY表示空槽，长度为2的幂
+    private final int[] table;
+    private final boolean containsEmpty;
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private AttributeSet(long[] bits, int[] table, boolean containsEmpty) {
+        this.bits = bits;
+        this.table = table;
+        this.containsEmpty = containsEmpty;
+    }
+
+    public static AttributeSet of(int[] atts) {
+        int min = 0, max = 0;
+        for (int att : atts) {
+            min = Math.min(min, att);
+            max = Math.max(max, att);
+        }
+        if (min >= 0 && max < MAX_BITMAP_ATT) {
+            long[] bits = new long[(max >>> 6) + 1];
+            for (int att : atts) {
+                bits[att >>> 6] |= 1L << att;
+            }
+            return new AttributeSet(bits, null, false);
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(4, atts.length * 2 - 1)) << 1;
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        boolean containsEmpty = false;
+        for (int att : atts) {
+            if (att == EMPTY) {
+                containsEmpty = true;
+                continue;
+            }
+            int i = mix(att) & (capacity - 1);
+            while (table[i] != EMPTY && table[i] != att) {
+                i = (i + 1) & (capacity - 1);
+            }
+            table[i] = att;
+        }
+        return new AttributeSet(null, table, containsEmpty);
+    }
+
+    public boolean contains(int att) {
+        if (bits != null) {
+            int word = att >>> 6;
+            return att >= 0 && word < bits.length && (bits[word] & (1L << att)) != 0;
+        }
+        if (att == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = table.length - 1;
+        int i = mix(att) & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == att) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    // 打散相邻的属性编号，避免线性探测时聚集
+    private static int mix(int x) {
+        x *= 0x9E3779B9;
+        return x ^ (x >>> 16);
+    }
+}
@@ -1,163 +1,81 @@
 import it.unisa.dia.gas.jpbc.Element;
 import it.unisa.dia.gas.jpbc.Pairing;
-import it.unisa.dia.gas.plaf.jpbc.pairing.PairingFactory;
 
 import java.io.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static java.lang.Integer.valueOf;
 
 public class CPABE {
 
     public static void setup(String pairingParametersFileName, String pkFileName, String mskFileName) {
-        Pairing bp = PairingFactory.getPairing(pairingParametersFileName);
-        Element g = bp.getG1().newRandomElement().getImmutable();
-        Element alpha = bp.getZr().newRandomElement().getImmutable();
-        Element beta = bp.getZr().newRandomElement().getImmutable();
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
+        CPABEEngine engine = CPABEEngine.setup(bp);
 
-        Element g_alpha = g.powZn(alpha).getImmutable();
-        Element g_beta = g.powZn(beta).getImmutable();
-        Element egg_alpha = bp.pairing(g,g).powZn(alpha).getImmutable();
-
-        Properties mskProp = new Properties();
-        mskProp.setProperty("g_alpha", Base64.getEncoder().withoutPadding().encodeToString(g_alpha.toBytes()));
-
-        Properties pkProp = new Properties();
-        pkProp.setProperty("g", Base64.getEncoder().withoutPadding().encodeToString(g.toBytes()));
-        pkProp.setProperty("g_beta", Base64.getEncoder().withoutPadding().encodeToString(g_beta.toBytes()));
-        pkProp.setProperty("egg_alpha", Base64.getEncoder().withoutPadding().encodeToString(egg_alpha.toBytes()));
-
-        storePropToFile(mskProp, mskFileName);
-        storePropToFile(pkProp, pkFileName);
+        storePropToFile(engine.getMasterKey().toProperties(), mskFileName);
+        storePropToFile(engine.getPublicKey().toProperties(), pkFileName);
     }
 
     public static void keygen(String pairingParametersFileName, int[] userAttList, String pkFileName, String mskFileName, String skFileName) throws NoSuchAlgorithmException {
-        Pairing bp = PairingFactory.getPairing(pairingParametersFileName);
-
-        Properties pkProp = loadPropFromFile(pkFileName);
-        String gString = pkProp.getProperty("g");
-        Element g = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(gString)).getImmutable();
-        String g_betaString = pkProp.getProperty("g_beta");
-        Element g_beta = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(g_betaString)).getImmutable();
-
-        Properties mskProp = loadPropFromFile(mskFileName);
-        String g_alphaString = mskProp.getProperty("g_alpha");
-        Element g_alpha = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(g_alphaString)).getImmutable();
-
-        Properties skProp = new Properties();
-
-        Element t = bp.getZr().newRandomElement().getImmutable();
-        Element D = g_alpha.mul(g_beta.powZn(t)).getImmutable();
-        Element D0 = g.powZn(t);
-
-        skProp.setProperty("D", Base64.getEncoder().withoutPadding().encodeToString(D.toBytes()));
-        skProp.setProperty("D0", Base64.getEncoder().withoutPadding().encodeToString(D0.toBytes()));
-
-        for (int att : userAttList) {
-            byte[] idHash = sha1(Integer.toString(att));
-            Element H = bp.getG1().newElementFromHash(idHash, 0, idHash.length).getImmutable();
-            Element Datt = H.powZn(t).getImmutable();
-            skProp.setProperty("D"+att, Base64.getEncoder().withoutPadding().encodeToString(Datt.toBytes()));
-        }
-
-        skProp.setProperty("userAttList", Arrays.toString(userAttList));
-        storePropToFile(skProp, skFileName);
+        CPABEEngine engine = CPABEEngine.load(pairingParametersFileName, pkFileName, mskFileName);
+        CPABESecretKey sk = engine.keygen(userAttList);
+        storePropToFile(sk.toProperties(), skFileName);
     }
 
     public static void encrypt(String pairingParametersFileName, Element message, Node[] accessTree,
                                String pkFileName, String ctFileName) throws NoSuchAlgorithmException {
-        Pairing bp = PairingFactory.getPairing(pairingParametersFileName);
-
-        Properties pkProp = loadPropFromFile(pkFileName);
-        String gString = pkProp.getProperty("g");
-        Element g = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(gString)).getImmutable();
-        String g_betaString = pkProp.getProperty("g_beta");
-        Element g_beta = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(g_betaString)).getImmutable();
-        String egg_alphaString = pkProp.getProperty("egg_alpha");
-        Element egg_alpha = bp.getGT().newElementFromBytes(Base64.getDecoder().decode(egg_alphaString)).getImmutable();
-
-        Properties ctProp = new Properties();
-        //计算密文组件 C=M e(g,g)^(alpha s)
-        Element s = bp.getZr().newRandomElement().getImmutable();
-        Element C = message.duplicate().mul(egg_alpha.powZn(s)).getImmutable();
-        Element C0 = g.powZn(s).getImmutable();
-
-        ctProp.setProperty("C", Base64.getEncoder().withoutPadding().encodeToString(C.toBytes()));
-        ctProp.setProperty("C0", Base64.getEncoder().withoutPadding().encodeToString(C0.toBytes()));
-
-        //先设置根节点要共享的秘密值
-        accessTree[0].secretShare = s;
-        //进行共享，使得每个叶子节点获得响应的秘密分片
-        nodeShare(accessTree, accessTree[0], bp);
-
-        for (Node node:accessTree) {
-            if (node.isLeaf()){
-                Element r = bp.getZr().newRandomElement().getImmutable();
-
-                byte[] idHash = sha1(Integer.toString(node.att));
-                Element Hi = bp.getG1().newElementFromHash(idHash, 0, idHash.length).getImmutable();
-
-                Element C1 = g_beta.powZn(node.secretShare).mul(Hi.powZn(r.negate()));
-                Element C2 = g.powZn(r);
-
-                ctProp.setProperty("C1-"+node.att, Base64.getEncoder().withoutPadding().encodeToString(C1.toBytes()));
-                ctProp.setProperty("C2-"+node.att, Base64.getEncoder().withoutPadding().encodeToString(C2.toBytes()));
-            }
-        }
-        storePropToFile(ctProp, ctFileName);
+        CPABEEngine engine = CPABEEngine.load(pairingParametersFileName, pkFileName);
+        CPABECiphertext ct = engine.encrypt(message, accessTree);
+        storePropToFile(ct.toProperties(), ctFileName);
     }
 
+    // 解密普通密文只需要配对参数，不需要公钥；在线/离线加密（EncryptionPool）得到的密文（带有C3）需要公钥，
+    // 应使用带pkFileName的重载，这里直接抛出IllegalArgumentException
     public static Element Decrypt(String pairingParametersFileName, Node[] accessTree, String ctFileName, String skFileName) {
-        Pairing bp = PairingFactory.getPairing(pairingParametersFileName);
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
 
-        Properties ctProp = loadPropFromFile(ctFileName);
-
-        Properties skProp = loadPropFromFile(skFileName);
-        String userAttListString = skProp.getProperty("userAttList");
-        //恢复用户属性列表 int[]类型
-        int[] userAttList = Arrays.stream(userAttListString.substring(1, userAttListString.length()-1).split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
-
-        System.out.println("用户属性列表：" + userAttListString);
-
-        String CString = ctProp.getProperty("C");
-        Element C = bp.getGT().newElementFromBytes(Base64.getDecoder().decode(CString)).getImmutable();
-        String C0String = ctProp.getProperty("C0");
-        Element C0 = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(C0String)).getImmutable();
+        CPABECiphertext ct = CPABECiphertext.fromProperties(loadPropFromFile(ctFileName), bp);
+        if (ct.isOnline()) {
+            throw new IllegalArgumentException(ctFileName + " was produced by online/offline encryption and can only be "
+                    + "decrypted with the public key, use Decrypt(..., pkFileName)");
+        }
+        CPABESecretKey sk = CPABESecretKey.fromProperties(loadPropFromFile(skFileName), bp);
+
+        System.out.println("用户属性列表：" + Arrays.toString(sk.userAttList));
+
+        Policy policy = Policy.of(accessTree);
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            // 如果叶子节点的属性值属于属性列表，则将属性对应的密文组件和秘钥组件配对的结果作为秘密值
+            boolean treeOK = AccessTree.recover(policy, 0, AttributeSet.of(sk.userAttList), i -> {
+                int att = policy.att(i);
+                return bp.pairing(ct.C1.get(att), sk.D0).mul(bp.pairing(ct.C2.get(att), sk.Datt.get(att))).getImmutable();
+            }, scratch, bp);
+            if (!treeOK) {
+                System.out.println("The access tree is not satisfied.");
+                return null;
+            }
+            Element egg_alphas = bp.pairing(ct.C0, sk.D).div(scratch.share[0]);
+            return ct.C.div(egg_alphas);
+        }
+    }
 
-        String DString = skProp.getProperty("D");
-        Element D = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(DString)).getImmutable();
-        String D0String = skProp.getProperty("D0");
-        Element D0 = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(D0String)).getImmutable();
+    public static Element Decrypt(String pairingParametersFileName, Node[] accessTree, String ctFileName, String skFileName,
+                                  String pkFileName) {
+        CPABEEngine engine = CPABEEngine.load(pairingParametersFileName, pkFileName);
+        Pairing bp = engine.getPairing();
 
-        for (Node node : accessTree) {
-            if (node.isLeaf()) {
-                // 如果叶子节点的属性值属于属性列表，则将属性对应的密文组件和秘钥组件配对的结果作为秘密值
-                if (Arrays.stream(userAttList).boxed().collect(Collectors.toList()).contains(node.att)){
-                    String C1tring = ctProp.getProperty("C1-"+node.att);
-                    Element C1 = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(C1tring)).getImmutable();
-                    String C2tring = ctProp.getProperty("C2-"+node.att);
-                    Element C2 = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(C2tring)).getImmutable();
+        CPABECiphertext ct = CPABECiphertext.fromProperties(loadPropFromFile(ctFileName), bp);
+        CPABESecretKey sk = CPABESecretKey.fromProperties(loadPropFromFile(skFileName), bp);
 
-                    String DattString = skProp.getProperty("D"+node.att);
-                    Element Datt = bp.getG1().newElementFromBytes(Base64.getDecoder().decode(DattString)).getImmutable();
+        System.out.println("用户属性列表：" + Arrays.toString(sk.userAttList));
 
-                    node.secretShare = bp.pairing(C1,D0).mul(bp.pairing(C2,Datt)).getImmutable();
-                }
-            }
-        }
-        // 进行秘密恢复
-        boolean treeOK = nodeRecover(accessTree, accessTree[0], userAttList, bp);
-        if (treeOK) {
-            Element egg_alphas = bp.pairing(C0,D).div(accessTree[0].secretShare);
-            return C.div(egg_alphas);
-        }
-        else {
+        Element res = engine.decrypt(accessTree, ct, sk);
+        if (res == null) {
             System.out.println("The access tree is not satisfied.");
-            return null;
         }
+        return res;
     }
 
     //d-1次多项式表示为q(x)=coef[0] + coef[1]*x^1 + coef[2]*x^2 + coef[d-1]*x^(d-1)
@@ -172,30 +90,27 @@ public class CPABE {
         return  coef;
     }
     //计算由coef为系数确定的多项式qx在点index处的值，注意多项式计算在群Zr上进行
+    //按Horner形式 q(x) = (...(coef[d-1]*x + coef[d-2])*x + ...)*x + coef[0] 求值，
+    //只需要d-1次乘法和加法，所有运算都在同一个可变的累加器上原地进行，不再对每个系数做一次powZn
     public static Element qx(Element index, Element[] coef, Pairing bp){
-        Element res = coef[0].getImmutable();
-        for (int i = 1; i < coef.length; i++){
-            Element exp = bp.getZr().newElement(i).getImmutable();
-            //index一定要使用duplicate复制使用，因为index在每一次循环中都要使用，如果不加duplicte，index的值会发生变化
-            res = res.add(coef[i].mul(index.duplicate().powZn(exp)));
+        Element res = coef[coef.length - 1].duplicate();
+        for (int i = coef.length - 2; i >= 0; i--){
+            res.mul(index).add(coef[i]);
         }
-        return res;
+        return res.getImmutable();
     }
     //拉格朗日因子计算 i是集合S中的某个元素，x是目标点的值
+    //分子prod(x-j)和分母prod(i-j)分别在两个可变累加器上原地连乘，最后只做一次除法，而不是每个j做一次
     public static Element lagrange(int i, int[] S, int x, Pairing bp) {
-        Element res = bp.getZr().newOneElement().getImmutable();
-        Element iElement = bp.getZr().newElement(i).getImmutable();
-        Element xElement = bp.getZr().newElement(x).getImmutable();
+        Element numerator = bp.getZr().newOneElement();
+        Element denominator = bp.getZr().newOneElement();
         for (int j : S) {
             if (i != j) {
-                //注意：在循环中重复使用的项一定要用duplicate复制出来使用
-                //这儿xElement和iElement重复使用，但因为前面已经getImmutable所以可以不用duplicate
-                Element numerator = xElement.sub(bp.getZr().newElement(j));
-                Element denominator = iElement.sub(bp.getZr().newElement(j));
-                res = res.mul(numerator.div(denominator));
+                numerator.mul(x - j);
+                denominator.mul(i - j);
             }
         }
-        return res;
+        return numerator.div(denominator).getImmutable();
     }
 
     // 共享秘密
@@ -218,6 +133,11 @@ public class CPABE {
 
     // 恢复秘密
     public static boolean nodeRecover(Node[] nodes, Node n,  int[] atts, Pairing bp) {
+        return nodeRecover(nodes, n, AttributeSet.of(atts), bp);
+    }
+
+    // 属性列表预先转换为AttributeSet，整个递归过程中判断叶子属性是否属于属性列表都是O(1)
+    public static boolean nodeRecover(Node[] nodes, Node n, AttributeSet atts, Pairing bp) {
         if (!n.isLeaf()) {
             // 对于内部节点，维护一个子节点索引列表，用于秘密恢复。
             List<Integer> validChildrenList = new ArrayList<Integer>();
@@ -245,9 +165,10 @@ public class CPABE {
                 // 利用拉格朗日差值恢复秘密
                 // 注意，此处是在指数因子上做拉格朗日差值
                 Element secret = bp.getGT().newOneElement().getImmutable();
-                for (int i : validChildren) {
-                    Element delta = lagrange(i, validChildren, 0, bp);  //计算拉个朗日插值因子
-                    secret = secret.mul(nodes[i].secretShare.duplicate().powZn(delta)); //基于拉格朗日因子进行指数运算，然后连乘
+                // 与引擎相同，一次算出所有子节点的拉格朗日插值因子
+                Element[] deltas = AccessTree.lagrangeCoefficients(validChildren, 0, bp);
+                for (int t = 0; t < validChildren.length; t++) {
+                    secret = secret.mul(nodes[validChildren[t]].secretShare.duplicate().powZn(deltas[t])); //基于拉格朗日因子进行指数运算，然后连乘
                 }
                 n.secretShare = secret;
             }
@@ -255,7 +176,7 @@ public class CPABE {
         else {
             // 判断叶子节点的属性值是否属于属性列表
             // 判断一个元素是否属于数组，注意String类型和int类型的判断方式不同
-            if (Arrays.stream(atts).boxed().collect(Collectors.toList()).contains(n.att)){
+            if (atts.contains(n.att)){
                 n.valid = true;
             }
         }
@@ -286,8 +207,19 @@ public class CPABE {
         return prop;
     }
 
+    // 每个线程复用一个MessageDigest实例，避免每次调用都通过MessageDigest.getInstance查找实现
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
     public static byte[] sha1(String content) throws NoSuchAlgorithmException {
-        MessageDigest instance = MessageDigest.getInstance("SHA-1");
+        MessageDigest instance = SHA1.get();
+        instance.reset();
         instance.update(content.getBytes());
         return instance.digest();
     }
@@ -321,11 +253,11 @@ public class CPABE {
         setup(pairingParametersFileName, pkFileName, mskFileName);
         keygen(pairingParametersFileName, userAttList, pkFileName, mskFileName, skFileName);
 
-        Element message = PairingFactory.getPairing(pairingParametersFileName).getGT().newRandomElement().getImmutable();
+        Element message = ABEUtils.getPairing(pairingParametersFileName).getGT().newRandomElement().getImmutable();
         System.out.println("明文消息:" + message);
         encrypt(pairingParametersFileName, message, accessTree, pkFileName, ctFileName);
 
-       Element res = Decrypt(pairingParametersFileName, accessTree, ctFileName, skFileName);
+       Element res = Decrypt(pairingParametersFileName, accessTree, ctFileName, skFileName, pkFileName);
         System.out.println("解密结果:" + res);
 
         if (message.isEqual(res)) {
@@ -0,0 +1,70 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// CP-ABE密文 C, C0 以及访问树每个叶子节点对应的 C1-<att>, C2-<att>
+// 在线/离线加密（EncryptionPool）得到的密文中，C1使用预先计算的随机分片lambda'，
+// 另外带有Zr上的修正值 C3-<att> = lambda - lambda'，解密时补上 e(g_beta, D0)^(C3)；普通密文的C3为空
+public class CPABECiphertext {
+    public final Element C;
+    public final Element C0;
+    public final Map<Integer, Element> C1;
+    public final Map<Integer, Element> C2;
+    public final Map<Integer, Element> C3;
+
+    public CPABECiphertext(Element C, Element C0, Map<Integer, Element> C1, Map<Integer, Element> C2) {
+        this(C, C0, C1, C2, Collections.emptyMap());
+    }
+
+    public CPABECiphertext(Element C, Element C0, Map<Integer, Element> C1, Map<Integer, Element> C2,
+                           Map<Integer, Element> C3) {
+        this.C = C.getImmutable();
+        this.C0 = C0.getImmutable();
+        this.C1 = Collections.unmodifiableMap(new LinkedHashMap<>(C1));
+        this.C2 = Collections.unmodifiableMap(new LinkedHashMap<>(C2));
+        this.C3 = Collections.unmodifiableMap(new LinkedHashMap<>(C3));
+    }
+
+    // 是否为在线/离线加密得到的、带有修正值C3的密文
+    public boolean isOnline() {
+        return !C3.isEmpty();
+    }
+
+    public Properties toProperties() {
+        Properties ctProp = new Properties();
+        ctProp.setProperty("C", ABEUtils.toBase64(C));
+        ctProp.setProperty("C0", ABEUtils.toBase64(C0));
+        for (int att : C1.keySet()) {
+            ctProp.setProperty("C1-"+att, ABEUtils.toBase64(C1.get(att)));
+            ctProp.setProperty("C2-"+att, ABEUtils.toBase64(C2.get(att)));
+            if (C3.containsKey(att)) {
+                ctProp.setProperty("C3-"+att, ABEUtils.toBase64(C3.get(att)));
+            }
+        }
+        return ctProp;
+    }
+
+    public static CPABECiphertext fromProperties(Properties ctProp, Pairing bp) {
+        Element C = ABEUtils.fromBase64(bp.getGT(), ctProp.getProperty("C"));
+        Element C0 = ABEUtils.fromBase64(bp.getG1(), ctProp.getProperty("C0"));
+        Map<Integer, Element> C1 = new LinkedHashMap<>();
+        Map<Integer, Element> C2 = new LinkedHashMap<>();
+        Map<Integer, Element> C3 = new LinkedHashMap<>();
+        for (String name : ctProp.stringPropertyNames()) {
+            if (name.startsWith("C1-")) {
+                int att = Integer.parseInt(name.substring(3));
+                C1.put(att, ABEUtils.fromBase64(bp.getG1(), ctProp.getProperty(name)));
+                C2.put(att, ABEUtils.fromBase64(bp.getG1(), ctProp.getProperty("C2-"+att)));
+                String C3Value = ctProp.getProperty("C3-"+att);
+                if (C3Value != null) {
+                    C3.put(att, ABEUtils.fromBase64(bp.getZr(), C3Value));
+                }
+            }
+        }
+        return new CPABECiphertext(C, C0, C1, C2, C3);
+    }
+}
@@ -0,0 +1,64 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.jpbc.PairingPreProcessing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 用于反复解密的CP-ABE私钥
+// 对于同一个用户私钥，D0, D 以及每个 D<att> 在所有解密中都是固定的配对参数，
+// 因此可以预先对它们做配对预处理（预计算Miller循环中只依赖于该参数的部分），之后每次配对只需要完成剩余的计算
+// type a曲线上的配对是对称的，e(C1,D0)=e(D0,C1)，所以可以把私钥组件放在配对的第一个参数上做预处理
+// 预处理结果构造后只读，可以被多个线程同时使用
+public class CPABEDecryptionKey {
+    public final CPABESecretKey sk;
+    private final Pairing bp;
+    // 未做预处理时以下均为null/空，配对退化为普通的bp.pairing
+    private final PairingPreProcessing D0Pre;
+    private final PairingPreProcessing DPre;
+    private final Map<Integer, PairingPreProcessing> DattPre;
+
+    private CPABEDecryptionKey(Pairing bp, CPABESecretKey sk, boolean preprocess) {
+        this.bp = bp;
+        this.sk = sk;
+        this.D0Pre = preprocess ? bp.getPairingPreProcessingFromElement(sk.D0) : null;
+        this.DPre = preprocess ? bp.getPairingPreProcessingFromElement(sk.D) : null;
+        Map<Integer, PairingPreProcessing> DattPre = new HashMap<>();
+        if (preprocess) {
+            for (Map.Entry<Integer, Element> entry : sk.Datt.entrySet()) {
+                DattPre.put(entry.getKey(), bp.getPairingPreProcessingFromElement(entry.getValue()));
+            }
+        }
+        this.DattPre = DattPre;
+    }
+
+    // 对私钥的所有组件做配对预处理
+    public static CPABEDecryptionKey preprocess(Pairing bp, CPABESecretKey sk) {
+        return new CPABEDecryptionKey(bp, sk, true);
+    }
+
+    // 不做预处理，适合只解密一次的场景
+    public static CPABEDecryptionKey plain(Pairing bp, CPABESecretKey sk) {
+        return new CPABEDecryptionKey(bp, sk, false);
+    }
+
+    public boolean isPreprocessed() {
+        return D0Pre != null;
+    }
+
+    // e(C1, D0)
+    public Element pairD0(Element C1) {
+        return D0Pre != null ? D0Pre.pairing(C1) : bp.pairing(C1, sk.D0);
+    }
+
+    // e(C0, D)
+    public Element pairD(Element C0) {
+        return DPre != null ? DPre.pairing(C0) : bp.pairing(C0, sk.D);
+    }
+
+    // e(C2, D<att>)
+    public Element pairDatt(int att, Element C2) {
+        PairingPreProcessing pre = DattPre.get(att);
+        return pre != null ? pre.pairing(C2) : bp.pairing(C2, sk.Datt.get(att));
+    }
+}
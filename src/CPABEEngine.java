@@ -0,0 +1,573 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+// 长期存活的CP-ABE引擎：配对参数和公钥只在构造时加载、解码一次，之后所有的keygen/encrypt/decrypt都在内存中完成
+// 引擎中保存的群元素全部为不可变元素，同一个引擎可以被反复使用
+public class CPABEEngine {
+    private final Pairing bp;
+    private final CPABEPublicKey pk;
+    // 只有属性授权中心持有主密钥，普通的加密方/解密方为null
+    private final CPABEMasterKey msk;
+    // 公钥中固定底数g, g_beta, egg_alpha的预计算表，未启用时为null
+    private final FixedBaseTable gTable;
+    private final FixedBaseTable g_betaTable;
+    private final FixedBaseTable egg_alphaTable;
+    private final ProductPairing productPairing;
+    // 按叶子（属性）并行计算encrypt和keygen时使用的线程池，为null时串行计算
+    private final ExecutorService leafExecutor;
+    // 属性哈希到G1的缓存，可以在使用相同配对参数的多个引擎之间共享
+    private final AttributeHashCache hashCache;
+    // 解密时各个门的拉格朗日因子缓存，可以在使用相同配对参数的多个引擎之间共享
+    private final LagrangeCache lagrangeCache;
+    // 字符串属性到整数属性编号的字典
+    private final AttributeDictionary dictionary;
+
+    public CPABEEngine(Pairing bp, CPABEPublicKey pk) {
+        this(bp, pk, null);
+    }
+
+    public CPABEEngine(Pairing bp, CPABEPublicKey pk, CPABEMasterKey msk) {
+        this(bp, pk, msk, null, null, null, null, new AttributeHashCache(bp), new LagrangeCache(bp),
+                new AttributeDictionary());
+    }
+
+    private CPABEEngine(Pairing bp, CPABEPublicKey pk, CPABEMasterKey msk, FixedBaseTable gTable,
+                        FixedBaseTable g_betaTable, FixedBaseTable egg_alphaTable, ExecutorService leafExecutor,
+                        AttributeHashCache hashCache, LagrangeCache lagrangeCache, AttributeDictionary dictionary) {
+        this.bp = bp;
+        this.pk = pk;
+        this.msk = msk;
+        this.gTable = gTable;
+        this.g_betaTable = g_betaTable;
+        this.egg_alphaTable = egg_alphaTable;
+        this.productPairing = new ProductPairing(bp);
+        this.leafExecutor = leafExecutor;
+        this.hashCache = hashCache;
+        this.lagrangeCache = lagrangeCache;
+        this.dictionary = dictionary;
+    }
+
+    // 返回一个为公钥底数建立了固定底数预计算表的新引擎，之后的encrypt和keygen都复用这些表
+    // window为期望的窗口大小，当三张表的总大小超出memoryBudgetBytes时自动缩小窗口，预算不足时不建表
+    public CPABEEngine withFixedBaseTables(int window, long memoryBudgetBytes) {
+        int k = FixedBaseTable.windowForBudget(Arrays.asList(pk.g, pk.g_beta, pk.egg_alpha), window, memoryBudgetBytes);
+        if (k == 0) {
+            return new CPABEEngine(bp, pk, msk, null, null, null, leafExecutor, hashCache, lagrangeCache, dictionary);
+        }
+        return new CPABEEngine(bp, pk, msk, new FixedBaseTable(pk.g, k), new FixedBaseTable(pk.g_beta, k),
+                new FixedBaseTable(pk.egg_alpha, k), leafExecutor, hashCache, lagrangeCache, dictionary);
+    }
+
+    // 返回一个在executor上按叶子并行计算encrypt和keygen的新引擎，executor由调用方管理，为null时恢复串行计算
+    // 输出的密文和私钥组件顺序与串行计算相同
+    public CPABEEngine withLeafExecutor(ExecutorService executor) {
+        return new CPABEEngine(bp, pk, msk, gTable, g_betaTable, egg_alphaTable, executor, hashCache, lagrangeCache, dictionary);
+    }
+
+    // 使用公共的ForkJoinPool按叶子并行计算
+    public CPABEEngine withParallelLeaves() {
+        return withLeafExecutor(ForkJoinPool.commonPool());
+    }
+
+    // 返回一个使用给定属性哈希缓存的新引擎，cache必须基于同一组配对参数
+    public CPABEEngine withAttributeCache(AttributeHashCache cache) {
+        if (cache.getPairing() != bp) {
+            throw new IllegalArgumentException("attribute cache was built for a different pairing");
+        }
+        return new CPABEEngine(bp, pk, msk, gTable, g_betaTable, egg_alphaTable, leafExecutor, cache, lagrangeCache, dictionary);
+    }
+
+    // 返回一个使用给定拉格朗日因子缓存的新引擎，cache必须基于同一组配对参数
+    public CPABEEngine withLagrangeCache(LagrangeCache cache) {
+        if (cache.getPairing() != bp) {
+            throw new IllegalArgumentException("lagrange cache was built for a different pairing");
+        }
+        return new CPABEEngine(bp, pk, msk, gTable, g_betaTable, egg_alphaTable, leafExecutor, hashCache, cache, dictionary);
+    }
+
+    // 返回一个使用给定字符串属性字典的新引擎
+    public CPABEEngine withDictionary(AttributeDictionary dictionary) {
+        return new CPABEEngine(bp, pk, msk, gTable, g_betaTable, egg_alphaTable, leafExecutor, hashCache, lagrangeCache, dictionary);
+    }
+
+    // 文件读取失败时抛出UncheckedIOException
+    public static CPABEEngine load(String pairingParametersFileName, String pkFileName) {
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
+        CPABEPublicKey pk = CPABEPublicKey.fromProperties(ABEUtils.loadPropertiesUnchecked(pkFileName), bp);
+        return new CPABEEngine(bp, pk);
+    }
+
+    public static CPABEEngine load(String pairingParametersFileName, String pkFileName, String mskFileName) {
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
+        CPABEPublicKey pk = CPABEPublicKey.fromProperties(ABEUtils.loadPropertiesUnchecked(pkFileName), bp);
+        CPABEMasterKey msk = CPABEMasterKey.fromProperties(ABEUtils.loadPropertiesUnchecked(mskFileName), bp);
+        return new CPABEEngine(bp, pk, msk);
+    }
+
+    // 生成新的系统公钥和主密钥，返回持有主密钥的引擎
+    public static CPABEEngine setup(Pairing bp) {
+        Element g = bp.getG1().newRandomElement().getImmutable();
+        Element alpha = bp.getZr().newRandomElement().getImmutable();
+        Element beta = bp.getZr().newRandomElement().getImmutable();
+
+        Element g_alpha = g.powZn(alpha).getImmutable();
+        Element g_beta = g.powZn(beta).getImmutable();
+        Element egg_alpha = bp.pairing(g,g).powZn(alpha).getImmutable();
+
+        return new CPABEEngine(bp, new CPABEPublicKey(g, g_beta, egg_alpha), new CPABEMasterKey(g_alpha));
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    public CPABEPublicKey getPublicKey() {
+        return pk;
+    }
+
+    public CPABEMasterKey getMasterKey() {
+        return msk;
+    }
+
+    public AttributeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public LagrangeCache getLagrangeCache() {
+        return lagrangeCache;
+    }
+
+    public AttributeHashCache getAttributeCache() {
+        return hashCache;
+    }
+
+    // 预计算表的窗口大小，0表示未启用预计算
+    public int getFixedBaseWindow() {
+        return gTable == null ? 0 : gTable.getWindow();
+    }
+
+    // 指数通常是秘密值（alpha, r, s, t等），不使用CurvePow，见CurvePow的说明
+    private static Element pow(Element base, FixedBaseTable table, Element exp) {
+        return table != null ? table.powZn(exp) : base.powZn(exp).getImmutable();
+    }
+
+    public CPABESecretKey keygen(String[] userAtts) throws NoSuchAlgorithmException {
+        return keygen(dictionary.resolve(userAtts));
+    }
+
+    public CPABESecretKey keygen(int[] userAttList) throws NoSuchAlgorithmException {
+        if (msk == null) {
+            throw new IllegalStateException("keygen requires an engine holding the master key");
+        }
+        Element t = bp.getZr().newRandomElement().getImmutable();
+        Element D = msk.g_alpha.mul(pow(pk.g_beta, g_betaTable, t)).getImmutable();
+        Element D0 = pow(pk.g, gTable, t);
+
+        // 每个属性的私钥组件相互独立，可以并行计算
+        List<Element> DattList = ParallelLeaves.map(leafExecutor, userAttList.length,
+                i -> hash(userAttList[i]).powZn(t).getImmutable());
+        Map<Integer, Element> Datt = new LinkedHashMap<>();
+        for (int i = 0; i < userAttList.length; i++) {
+            Datt.put(userAttList[i], DattList.get(i));
+        }
+        return new CPABESecretKey(userAttList, D, D0, Datt);
+    }
+
+    public CPABECiphertext encrypt(Element message, Node[] accessTree) throws NoSuchAlgorithmException {
+        return encrypt(message, Policy.of(accessTree));
+    }
+
+    public CPABECiphertext encrypt(Element message, Policy policy) throws NoSuchAlgorithmException {
+        Map<Integer, Element> H = new HashMap<>();
+        hashAttributes(policy, H);
+        return encrypt(message, policy, H);
+    }
+
+    // H为属性值 -> 属性哈希到G1上的元素，必须包含访问树的全部叶子属性
+    // 秘密分片写入本次操作的PolicyScratch而不是访问树，同一个Policy可以被多个线程同时用于加密
+    private CPABECiphertext encrypt(Element message, Policy policy, Map<Integer, Element> H) {
+        //计算密文组件 C=M e(g,g)^(alpha s)
+        Element s = bp.getZr().newRandomElement().getImmutable();
+        Element C = message.duplicate().mul(pow(pk.egg_alpha, egg_alphaTable, s)).getImmutable();
+        Element C0 = pow(pk.g, gTable, s);
+
+        List<Element[]> leafCts;
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            //进行共享，使得每个叶子节点获得响应的秘密分片
+            Element[] shares = scratch.share;
+            AccessTree.nodeShares(policy, s, shares, bp);
+
+            // 每个叶子的密文组件相互独立，可以并行计算；任务只读取不可变的分片、哈希值和公钥元素
+            leafCts = ParallelLeaves.map(leafExecutor, policy.leafCount(), j -> {
+                int leaf = policy.leaf(j);
+                Element r = bp.getZr().newRandomElement().getImmutable();
+                Element Hi = H.get(policy.att(leaf));
+                Element C1 = pow(pk.g_beta, g_betaTable, shares[leaf]).mul(Hi.powZn(r.negate())).getImmutable();
+                Element C2 = pow(pk.g, gTable, r);
+                return new Element[]{C1, C2};
+            });
+        }
+
+        Map<Integer, Element> C1s = new LinkedHashMap<>();
+        Map<Integer, Element> C2s = new LinkedHashMap<>();
+        for (int j = 0; j < policy.leafCount(); j++) {
+            int att = policy.att(policy.leaf(j));
+            C1s.put(att, leafCts.get(j)[0]);
+            C2s.put(att, leafCts.get(j)[1]);
+        }
+        return new CPABECiphertext(C, C0, C1s, C2s);
+    }
+
+    // ---------------------------------------------------------------- 在线/离线加密
+
+    // 离线部分：与消息和访问策略都无关的 s, e(g,g)^(alpha s), g^s
+    public EncryptionPool.Session offlineSession() {
+        Element s = bp.getZr().newRandomElement().getImmutable();
+        return new EncryptionPool.Session(s, pow(pk.egg_alpha, egg_alphaTable, s), pow(pk.g, gTable, s));
+    }
+
+    // 离线部分：与属性att绑定、与消息和访问策略无关的叶子材料
+    // 随机的分片lambda'和r，C1' = g_beta^lambda' H(att)^(-r)，C2 = g^r；r用完即丢弃
+    public EncryptionPool.Leaf offlineLeaf(int att) {
+        Element lambda = bp.getZr().newRandomElement().getImmutable();
+        Element r = bp.getZr().newRandomElement().getImmutable();
+        Element C1 = pow(pk.g_beta, g_betaTable, lambda).mul(hash(att).powZn(r.negate()));
+        return new EncryptionPool.Leaf(att, lambda, C1, pow(pk.g, gTable, r));
+    }
+
+    // 在线部分：以session中的s对访问树做秘密共享（只有Zr上的运算），C = M e(g,g)^(alpha s)为一次GT乘法，
+    // 每个叶子取一份leaves.apply(att)的材料，C1, C2直接使用，另外给出修正值 C3 = lambda - lambda'
+    // 每份session和叶子材料只能使用一次，否则不同密文之间会泄露分片之间的关系
+    public CPABECiphertext encryptOnline(Element message, Policy policy, EncryptionPool.Session session,
+                                         IntFunction<EncryptionPool.Leaf> leaves) {
+        Element C = message.duplicate().mul(session.egg_alphas).getImmutable();
+        Map<Integer, Element> C1s = new LinkedHashMap<>();
+        Map<Integer, Element> C2s = new LinkedHashMap<>();
+        Map<Integer, Element> C3s = new LinkedHashMap<>();
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            Element[] shares = scratch.share;
+            AccessTree.nodeShares(policy, session.s, shares, bp);
+            for (int j = 0; j < policy.leafCount(); j++) {
+                int leaf = policy.leaf(j);
+                int att = policy.att(leaf);
+                EncryptionPool.Leaf material = leaves.apply(att);
+                C1s.put(att, material.C1);
+                C2s.put(att, material.C2);
+                C3s.put(att, shares[leaf].sub(material.lambda).getImmutable());
+            }
+        }
+        return new CPABECiphertext(C, session.g_s, C1s, C2s, C3s);
+    }
+
+    // 批量加密：messages.get(i)在accessTrees.get(i)下加密，返回的密文与输入一一对应
+    // 整批只对出现过的每个属性做一次哈希，所有条目共用公钥及其预计算表；
+    // threads大于1时使用固定大小的线程池并行加密，否则在当前线程中依次加密
+    public List<CPABECiphertext> encryptBatch(List<Element> messages, List<Node[]> accessTrees, int threads)
+            throws NoSuchAlgorithmException, InterruptedException {
+        if (threads <= 1) {
+            return encryptBatch(messages, accessTrees, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return encryptBatch(messages, accessTrees, executor);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    // executor由调用方提供和关闭，为null时在当前线程中依次加密
+    public List<CPABECiphertext> encryptBatch(List<Element> messages, List<Node[]> accessTrees, ExecutorService executor)
+            throws NoSuchAlgorithmException, InterruptedException {
+        if (messages.size() != accessTrees.size()) {
+            throw new IllegalArgumentException("messages and accessTrees must have the same size");
+        }
+        List<Policy> policies = new ArrayList<>(accessTrees.size());
+        Map<Integer, Element> H = new HashMap<>();
+        for (Node[] accessTree : accessTrees) {
+            Policy policy = Policy.of(accessTree);
+            policies.add(policy);
+            hashAttributes(policy, H);
+        }
+
+        List<CPABECiphertext> cts = new ArrayList<>(messages.size());
+        if (executor == null) {
+            for (int i = 0; i < messages.size(); i++) {
+                cts.add(encrypt(messages.get(i), policies.get(i), H));
+            }
+            return cts;
+        }
+        List<Future<CPABECiphertext>> futures = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Element message = messages.get(i);
+            Policy policy = policies.get(i);
+            futures.add(executor.submit(() -> encrypt(message, policy, H)));
+        }
+        for (Future<CPABECiphertext> future : futures) {
+            try {
+                cts.add(future.get());
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return cts;
+    }
+
+    // 把访问树中尚未出现在H中的叶子属性哈希到G1上
+    private void hashAttributes(Policy policy, Map<Integer, Element> H) {
+        List<Integer> missing = new ArrayList<>();
+        for (int att : policy.attributes()) {
+            if (!H.containsKey(att)) {
+                missing.add(att);
+            }
+        }
+        List<Element> hashed = ParallelLeaves.map(leafExecutor, missing.size(), i -> hash(missing.get(i)));
+        for (int i = 0; i < missing.size(); i++) {
+            H.put(missing.get(i), hashed.get(i));
+        }
+    }
+
+    private Element hash(int att) {
+        return hashCache.get(att);
+    }
+
+    // 为反复使用同一私钥解密的场景，对私钥组件做配对预处理
+    public CPABEDecryptionKey prepare(CPABESecretKey sk) {
+        return CPABEDecryptionKey.preprocess(bp, sk);
+    }
+
+    // 访问树不满足时返回null
+    public Element decrypt(Node[] accessTree, CPABECiphertext ct, CPABESecretKey sk) {
+        return decrypt(Policy.of(accessTree), ct, CPABEDecryptionKey.plain(bp, sk), DecryptMode.RECURSIVE);
+    }
+
+    public Element decrypt(Node[] accessTree, CPABECiphertext ct, CPABESecretKey sk, DecryptMode mode) {
+        return decrypt(Policy.of(accessTree), ct, CPABEDecryptionKey.plain(bp, sk), mode);
+    }
+
+    public Element decrypt(Node[] accessTree, CPABECiphertext ct, CPABEDecryptionKey dk) {
+        return decrypt(Policy.of(accessTree), ct, dk, DecryptMode.RECURSIVE);
+    }
+
+    public Element decrypt(Node[] accessTree, CPABECiphertext ct, CPABEDecryptionKey dk, DecryptMode mode) {
+        return decrypt(Policy.of(accessTree), ct, dk, mode);
+    }
+
+    public Element decrypt(Policy policy, CPABECiphertext ct, CPABESecretKey sk) {
+        return decrypt(policy, ct, CPABEDecryptionKey.plain(bp, sk), DecryptMode.RECURSIVE);
+    }
+
+    public Element decrypt(Policy policy, CPABECiphertext ct, CPABESecretKey sk, DecryptMode mode) {
+        return decrypt(policy, ct, CPABEDecryptionKey.plain(bp, sk), mode);
+    }
+
+    public Element decrypt(Policy policy, CPABECiphertext ct, CPABEDecryptionKey dk) {
+        return decrypt(policy, ct, dk, DecryptMode.RECURSIVE);
+    }
+
+    // 恢复过程的状态保存在本次操作的PolicyScratch中，不修改policy，同一个Policy可以被多个线程同时用于解密
+    public Element decrypt(Policy policy, CPABECiphertext ct, CPABEDecryptionKey dk, DecryptMode mode) {
+        Element egg_alphas = recover(policy, ct, dk, mode);
+        return egg_alphas == null ? null : ct.C.div(egg_alphas);
+    }
+
+    // 恢复 e(g,g)^(alpha s)，私钥不满足访问树时返回null
+    // dk为转换私钥时得到的是 e(g,g)^(alpha s / z)，见transform
+    private Element recover(Policy policy, CPABECiphertext ct, CPABEDecryptionKey dk, DecryptMode mode) {
+        if (mode == DecryptMode.PRODUCT_PAIRING) {
+            return recoverProduct(policy, ct, dk.sk);
+        }
+        if (mode == DecryptMode.FLATTENED) {
+            return recoverFlattened(policy, ct, dk);
+        }
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            // 如果叶子节点的属性值属于属性列表，则将属性对应的密文组件和秘钥组件配对的结果作为秘密值
+            boolean treeOK = AccessTree.recover(policy, 0, AttributeSet.of(dk.sk.userAttList), i -> {
+                int att = policy.att(i);
+                return dk.pairD0(ct.C1.get(att)).mul(dk.pairDatt(att, ct.C2.get(att))).getImmutable();
+            }, scratch, lagrangeCache, bp);
+            if (!treeOK) {
+                return null;
+            }
+            Element secret = scratch.share[0];
+            // 在线/离线加密的密文，沿恢复时选中的子节点在Zr上对C3做同样的插值，得到sum(delta C3)，
+            // 与FLATTENED一样整个密文只需一次 e(g_beta^(sum(delta C3)), D0)
+            if (ct.isOnline()) {
+                Element sum = AccessTree.combine(policy, 0, i -> ct.C3.get(policy.att(i)), scratch, lagrangeCache, bp);
+                secret = secret.mul(dk.pairD0(pow(pk.g_beta, g_betaTable, sum)));
+            }
+            return dk.pairD(ct.C0).div(secret);
+        }
+    }
+
+    // 解密密文库中的一条密文：先只读取条目头部中的访问策略，私钥不满足时直接返回null，不解码任何群元素、不做配对；
+    // 满足时只解码选中的叶子对应的C1, C2。RECURSIVE需要所有满足的叶子，这里按FLATTENED处理
+    public Element decrypt(CiphertextStore.Entry entry, CPABEDecryptionKey dk, DecryptMode mode) throws IOException {
+        Policy policy = entry.policy();
+        if (policy == null) {
+            throw new IllegalArgumentException("entry " + entry.index + " is not a CP-ABE ciphertext");
+        }
+        Map<Integer, Element> coefs = AccessTree.leafCoefficients(policy, AttributeSet.of(dk.sk.userAttList), lagrangeCache, bp);
+        if (coefs == null) {
+            return null;
+        }
+        int[] atts = coefs.keySet().stream().mapToInt(policy::att).distinct().toArray();
+        CPABECiphertext ct = entry.decodeCP(bp, atts);
+        Element egg_alphas = mode == DecryptMode.PRODUCT_PAIRING
+                ? recoverProduct(policy, coefs, ct, dk.sk) : recoverFlattened(policy, coefs, ct, dk);
+        return ct.C.div(egg_alphas);
+    }
+
+    public Element decrypt(CiphertextStore.Entry entry, CPABEDecryptionKey dk) throws IOException {
+        return decrypt(entry, dk, DecryptMode.FLATTENED);
+    }
+
+    // 只为选中的叶子计算 e(C1,D0) e(C2,D<att>)，再以组合系数为指数在GT上连乘，
+    // 可以与配对预处理的私钥一起使用
+    private Element recoverFlattened(Policy policy, CPABECiphertext ct, CPABEDecryptionKey dk) {
+        Map<Integer, Element> coefs = AccessTree.leafCoefficients(policy, AttributeSet.of(dk.sk.userAttList), lagrangeCache, bp);
+        if (coefs == null) {
+            return null;
+        }
+        return recoverFlattened(policy, coefs, ct, dk);
+    }
+
+    private Element recoverFlattened(Policy policy, Map<Integer, Element> coefs, CPABECiphertext ct, CPABEDecryptionKey dk) {
+        Element secret = bp.getGT().newOneElement();
+        for (Map.Entry<Integer, Element> entry : coefs.entrySet()) {
+            int att = policy.att(entry.getKey());
+            Element share = dk.pairD0(ct.C1.get(att)).mul(dk.pairDatt(att, ct.C2.get(att)));
+            Element delta = entry.getValue();
+            secret.mul(delta.isOne() ? share : share.powZn(delta));
+        }
+        Element correction = correction(policy, coefs, ct);
+        if (correction != null) {
+            secret.mul(dk.pairD0(pow(pk.g_beta, g_betaTable, correction)));
+        }
+        return dk.pairD(ct.C0).div(secret);
+    }
+
+    // M = C / e(g,g)^(alpha s)
+    // e(g,g)^(alpha s) = e(C0,D) / prod(e(C1,D0) e(C2,D<att>))^delta
+    //                  = e(C0,D) * e(prod(C1^(-delta)), D0) * prod(e(C2^(-delta), D<att>))
+    // 拉格朗日因子作为G1上的指数，所有叶子共用D0的配对合并为一个，剩余配对合并为一次配对连乘
+    private Element recoverProduct(Policy policy, CPABECiphertext ct, CPABESecretKey sk) {
+        Map<Integer, Element> coefs = AccessTree.leafCoefficients(policy, AttributeSet.of(sk.userAttList), lagrangeCache, bp);
+        if (coefs == null) {
+            return null;
+        }
+        return recoverProduct(policy, coefs, ct, sk);
+    }
+
+    private Element recoverProduct(Policy policy, Map<Integer, Element> coefs, CPABECiphertext ct, CPABESecretKey sk) {
+        Element[] in1 = new Element[coefs.size() + 2];
+        Element[] in2 = new Element[coefs.size() + 2];
+        Element C1Prod = bp.getG1().newOneElement();
+        int i = 2;
+        for (Map.Entry<Integer, Element> entry : coefs.entrySet()) {
+            int att = policy.att(entry.getKey());
+            Element delta = entry.getValue();
+            C1Prod.mul(powNeg(ct.C1.get(att), delta));
+            in1[i] = powNeg(ct.C2.get(att), delta);
+            in2[i] = sk.Datt.get(att);
+            i++;
+        }
+        Element correction = correction(policy, coefs, ct);
+        if (correction != null) {
+            C1Prod.mul(pow(pk.g_beta, g_betaTable, correction.negate()));
+        }
+        in1[0] = ct.C0;
+        in2[0] = sk.D;
+        in1[1] = C1Prod;
+        in2[1] = sk.D0;
+        return productPairing.pairing(in1, in2);
+    }
+
+    // ---------------------------------------------------------------- 外包解密
+
+    // 生成外包解密用的私钥：在keygen的结果上以随机的z盲化，原私钥不再需要保存
+    public CPABEOutsourcedKey keygenOutsourced(String[] userAtts) throws NoSuchAlgorithmException {
+        return outsource(keygen(userAtts));
+    }
+
+    public CPABEOutsourcedKey keygenOutsourced(int[] userAttList) throws NoSuchAlgorithmException {
+        return outsource(keygen(userAttList));
+    }
+
+    // 由已有的私钥生成转换私钥，不需要主密钥，客户端可以自己完成
+    // D = g^(alpha + beta t)，D0 = g^t，D<att> = H(att)^t 都以1/z为指数，相当于以alpha/z和t/z生成的私钥
+    public CPABEOutsourcedKey outsource(CPABESecretKey sk) {
+        Element z = bp.getZr().newRandomElement().getImmutable();
+        while (z.isZero()) {
+            z = bp.getZr().newRandomElement().getImmutable();
+        }
+        Element zInv = z.invert().getImmutable();
+        int[] userAttList = sk.userAttList;
+        List<Element> DattList = ParallelLeaves.map(leafExecutor, userAttList.length,
+                i -> sk.Datt.get(userAttList[i]).powZn(zInv).getImmutable());
+        Map<Integer, Element> Datt = new LinkedHashMap<>();
+        for (int i = 0; i < userAttList.length; i++) {
+            Datt.put(userAttList[i], DattList.get(i));
+        }
+        CPABESecretKey tk = new CPABESecretKey(userAttList, sk.D.powZn(zInv).getImmutable(),
+                sk.D0.powZn(zInv).getImmutable(), Datt);
+        return new CPABEOutsourcedKey(tk, z);
+    }
+
+    // 服务端的转换：以转换私钥tk完成全部配对和秘密恢复，得到 T = e(g,g)^(alpha s / z)，tk不满足访问树时返回null
+    // tk通常是prepare(outsourcedKey.transformKey)的结果，反复转换时可以复用配对预处理
+    public CPABEPartialCiphertext transform(Policy policy, CPABECiphertext ct, CPABEDecryptionKey tk, DecryptMode mode) {
+        Element T = recover(policy, ct, tk, mode);
+        return T == null ? null : new CPABEPartialCiphertext(ct.C, T);
+    }
+
+    public CPABEPartialCiphertext transform(Policy policy, CPABECiphertext ct, CPABEDecryptionKey tk) {
+        return transform(policy, ct, tk, DecryptMode.FLATTENED);
+    }
+
+    // 客户端完成解密：M = C / T^z，只有一次GT上的指数运算，不需要配对
+    public Element decrypt(CPABEPartialCiphertext pct, Element retrievalKey) {
+        return pct.C.div(pct.T.powZn(retrievalKey));
+    }
+
+    // 在线/离线加密的密文：选中叶子的修正值以组合系数加权求和 sum(delta C3)，
+    // 所有叶子的修正合并为一次 e(g_beta^sum, D0)；普通密文返回null
+    private Element correction(Policy policy, Map<Integer, Element> coefs, CPABECiphertext ct) {
+        if (!ct.isOnline()) {
+            return null;
+        }
+        Element sum = bp.getZr().newZeroElement();
+        for (Map.Entry<Integer, Element> entry : coefs.entrySet()) {
+            sum.add(entry.getValue().mul(ct.C3.get(policy.att(entry.getKey()))));
+        }
+        return sum.getImmutable();
+    }
+
+    // 计算x^(-delta)，或门（门限为1）上的拉格朗日因子为1，此时只需要求逆，不需要指数运算
+    // delta是由访问树公开确定的拉格朗日因子，可以使用非常数时间的CurvePow
+    private static Element powNeg(Element x, Element delta) {
+        if (delta.isOne()) {
+            return x.duplicate().invert();
+        }
+        return CurvePow.powZn(x, delta.negate());
+    }
+}
@@ -0,0 +1,23 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Properties;
+
+// CP-ABE主密钥
+public class CPABEMasterKey {
+    public final Element g_alpha;
+
+    public CPABEMasterKey(Element g_alpha) {
+        this.g_alpha = g_alpha.getImmutable();
+    }
+
+    public Properties toProperties() {
+        Properties mskProp = new Properties();
+        mskProp.setProperty("g_alpha", ABEUtils.toBase64(g_alpha));
+        return mskProp;
+    }
+
+    public static CPABEMasterKey fromProperties(Properties mskProp, Pairing bp) {
+        return new CPABEMasterKey(ABEUtils.fromBase64(bp.getG1(), mskProp.getProperty("g_alpha")));
+    }
+}
@@ -0,0 +1,15 @@
+import it.unisa.dia.gas.jpbc.Element;
+
+// 外包解密用的CP-ABE私钥（Green-Hohenberger-Waters的转换私钥）
+// transformKey：以随机的z盲化后的私钥 D^(1/z), D0^(1/z), D<att>^(1/z)，结构与CPABESecretKey相同，
+//   交给服务端做转换（CPABEEngine.transform），服务端据此只能得到 e(g,g)^(alpha s / z)，无法解密
+// retrievalKey：z，只保存在客户端，用于从部分解密的密文中恢复明文
+public class CPABEOutsourcedKey {
+    public final CPABESecretKey transformKey;
+    public final Element retrievalKey;
+
+    public CPABEOutsourcedKey(CPABESecretKey transformKey, Element retrievalKey) {
+        this.transformKey = transformKey;
+        this.retrievalKey = retrievalKey.getImmutable();
+    }
+}
@@ -0,0 +1,13 @@
+import it.unisa.dia.gas.jpbc.Element;
+
+// 服务端用转换私钥部分解密后的CP-ABE密文：C = M e(g,g)^(alpha s)，T = e(g,g)^(alpha s / z)
+// 客户端只需一次GT上的指数运算即可恢复 M = C / T^z
+public class CPABEPartialCiphertext {
+    public final Element C;
+    public final Element T;
+
+    public CPABEPartialCiphertext(Element C, Element T) {
+        this.C = C.getImmutable();
+        this.T = T.getImmutable();
+    }
+}
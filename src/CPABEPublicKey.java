@@ -0,0 +1,32 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Properties;
+
+// CP-ABE公钥，解码后的群元素全部为不可变元素，可以被多个操作（线程）共享
+public class CPABEPublicKey {
+    public final Element g;
+    public final Element g_beta;
+    public final Element egg_alpha;
+
+    public CPABEPublicKey(Element g, Element g_beta, Element egg_alpha) {
+        this.g = g.getImmutable();
+        this.g_beta = g_beta.getImmutable();
+        this.egg_alpha = egg_alpha.getImmutable();
+    }
+
+    public Properties toProperties() {
+        Properties pkProp = new Properties();
+        pkProp.setProperty("g", ABEUtils.toBase64(g));
+        pkProp.setProperty("g_beta", ABEUtils.toBase64(g_beta));
+        pkProp.setProperty("egg_alpha", ABEUtils.toBase64(egg_alpha));
+        return pkProp;
+    }
+
+    public static CPABEPublicKey fromProperties(Properties pkProp, Pairing bp) {
+        Element g = ABEUtils.fromBase64(bp.getG1(), pkProp.getProperty("g"));
+        Element g_beta = ABEUtils.fromBase64(bp.getG1(), pkProp.getProperty("g_beta"));
+        Element egg_alpha = ABEUtils.fromBase64(bp.getGT(), pkProp.getProperty("egg_alpha"));
+        return new CPABEPublicKey(g, g_beta, egg_alpha);
+    }
+}
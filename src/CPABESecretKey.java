@@ -0,0 +1,47 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// CP-ABE用户私钥 D, D0 以及每个属性对应的 D<att>
+public class CPABESecretKey {
+    public final int[] userAttList;
+    public final Element D;
+    public final Element D0;
+    // 属性值 -> 属性对应的私钥组件，按userAttList的顺序保存
+    public final Map<Integer, Element> Datt;
+
+    public CPABESecretKey(int[] userAttList, Element D, Element D0, Map<Integer, Element> Datt) {
+        this.userAttList = userAttList.clone();
+        this.D = D.getImmutable();
+        this.D0 = D0.getImmutable();
+        this.Datt = Collections.unmodifiableMap(new LinkedHashMap<>(Datt));
+    }
+
+    public Properties toProperties() {
+        Properties skProp = new Properties();
+        skProp.setProperty("D", ABEUtils.toBase64(D));
+        skProp.setProperty("D0", ABEUtils.toBase64(D0));
+        for (Map.Entry<Integer, Element> entry : Datt.entrySet()) {
+            skProp.setProperty("D"+entry.getKey(), ABEUtils.toBase64(entry.getValue()));
+        }
+        skProp.setProperty("userAttList", Arrays.toString(userAttList));
+        return skProp;
+    }
+
+    public static CPABESecretKey fromProperties(Properties skProp, Pairing bp) {
+        //恢复用户属性列表 int[]类型
+        int[] userAttList = ABEUtils.parseIntArray(skProp.getProperty("userAttList"));
+        Element D = ABEUtils.fromBase64(bp.getG1(), skProp.getProperty("D"));
+        Element D0 = ABEUtils.fromBase64(bp.getG1(), skProp.getProperty("D0"));
+        Map<Integer, Element> Datt = new LinkedHashMap<>();
+        for (int att : userAttList) {
+            Datt.put(att, ABEUtils.fromBase64(bp.getG1(), skProp.getProperty("D"+att)));
+        }
+        return new CPABESecretKey(userAttList, D, D0, Datt);
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// CiphertextStore的预筛选索引：给定私钥，不做任何配对就列出私钥能够解密的条目，结果以条目编号的位图表示
+//   - CP-ABE：把结构相同的访问策略合并为一组，记录 属性 -> 含有该属性的策略组 的位图；
+//     查询时只对私钥属性涉及到的策略组求值一次，再把满足的组的条目位图合并
+//   - KP-ABE：记录 属性 -> 密文属性列表含有该属性的条目 的位图；
+//     查询时把私钥的访问树直接在位图上求值：叶子为该属性的条目位图，与门求交集，或门求并集，
+//     k-of-n门用“至少j个子节点满足”的位图逐个子节点递推
+// 索引只依赖于头部（策略和属性列表），筛选结果是精确的：返回的条目都能被该私钥解密，其余条目都不能
+// 索引构造后不再修改，可以被多个线程同时查询
+public class CiphertextIndex {
+    private final ABEBinaryFormat.Type type;
+    private final int size;
+    // CP-ABE：每个策略组的访问策略和组内条目
+    private final Policy[] policies;
+    private final BitSet[] groupEntries;
+    // CP-ABE为 属性 -> 策略组，KP-ABE为 属性 -> 条目
+    private final Map<Integer, BitSet> postings;
+
+    private CiphertextIndex(ABEBinaryFormat.Type type, int size, Policy[] policies, BitSet[] groupEntries,
+                            Map<Integer, BitSet> postings) {
+        this.type = type;
+        this.size = size;
+        this.policies = policies;
+        this.groupEntries = groupEntries;
+        this.postings = postings;
+    }
+
+    // 读取所有条目的头部建立索引，不解码任何群元素
+    public static CiphertextIndex build(CiphertextStore store) throws IOException {
+        Map<Integer, BitSet> postings = new HashMap<>();
+        if (store.getType() == ABEBinaryFormat.Type.KP_CIPHERTEXT) {
+            for (int i = 0; i < store.size(); i++) {
+                for (int att : store.entry(i).attributes()) {
+                    postings.computeIfAbsent(att, a -> new BitSet()).set(i);
+                }
+            }
+            return new CiphertextIndex(store.getType(), store.size(), null, null, postings);
+        }
+
+        // 以策略的二进制形式作为分组的键，结构和节点编号都相同的策略才归为一组
+        Map<ByteBuffer, Integer> groups = new HashMap<>();
+        List<Policy> policies = new ArrayList<>();
+        List<BitSet> groupEntries = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            Policy policy = store.entry(i).policy();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            policy.writeTo(new DataOutputStream(bytes));
+            ByteBuffer key = ByteBuffer.wrap(bytes.toByteArray());
+            Integer group = groups.get(key);
+            if (group == null) {
+                group = policies.size();
+                groups.put(key, group);
+                policies.add(policy);
+                groupEntries.add(new BitSet());
+                for (int att : policy.attributes()) {
+                    postings.computeIfAbsent(att, a -> new BitSet()).set(group);
+                }
+            }
+            groupEntries.get(group).set(i);
+        }
+        return new CiphertextIndex(store.getType(), store.size(), policies.toArray(new Policy[0]),
+                groupEntries.toArray(new BitSet[0]), postings);
+    }
+
+    public ABEBinaryFormat.Type getType() {
+        return type;
+    }
+
+    // 被索引的条目个数
+    public int size() {
+        return size;
+    }
+
+    // CP-ABE：不同访问策略的个数
+    public int policyCount() {
+        return policies == null ? 0 : policies.length;
+    }
+
+    // CP-ABE：属性为userAttList的私钥能够解密的条目，返回的位图由调用方所有
+    public BitSet candidates(int[] userAttList) {
+        checkType(ABEBinaryFormat.Type.CP_CIPHERTEXT);
+        AttributeSet atts = AttributeSet.of(userAttList);
+        // 不含任何私钥属性的策略不可能被满足，不需要求值
+        BitSet touched = new BitSet();
+        for (int att : userAttList) {
+            BitSet groups = postings.get(att);
+            if (groups != null) {
+                touched.or(groups);
+            }
+        }
+        BitSet result = new BitSet();
+        for (int g = touched.nextSetBit(0); g >= 0; g = touched.nextSetBit(g + 1)) {
+            if (satisfied(policies[g], 0, atts)) {
+                result.or(groupEntries[g]);
+            }
+        }
+        return result;
+    }
+
+    // KP-ABE：访问策略为keyPolicy的私钥能够解密的条目，返回的位图由调用方所有
+    public BitSet candidates(Policy keyPolicy) {
+        checkType(ABEBinaryFormat.Type.KP_CIPHERTEXT);
+        return evaluate(keyPolicy, 0);
+    }
+
+    private BitSet evaluate(Policy policy, int index) {
+        if (policy.isLeaf(index)) {
+            BitSet entries = postings.get(policy.att(index));
+            return entries == null ? new BitSet() : (BitSet) entries.clone();
+        }
+        int k = policy.threshold(index);
+        int n = policy.childCount(index);
+        if (k == 1 || k == n) {
+            BitSet result = evaluate(policy, policy.child(index, 0));
+            for (int j = 1; j < n && (k == 1 || !result.isEmpty()); j++) {
+                BitSet child = evaluate(policy, policy.child(index, j));
+                if (k == 1) {
+                    result.or(child);
+                }
+                else {
+                    result.and(child);
+                }
+            }
+            return result;
+        }
+        // atLeast[j]：至少有j个已处理的子节点满足的条目；atLeast[0]为全部条目
+        BitSet[] atLeast = new BitSet[k + 1];
+        atLeast[0] = new BitSet();
+        atLeast[0].set(0, size);
+        for (int j = 1; j <= k; j++) {
+            atLeast[j] = new BitSet();
+        }
+        for (int c = 0; c < n; c++) {
+            BitSet child = evaluate(policy, policy.child(index, c));
+            for (int j = Math.min(k, c + 1); j >= 1; j--) {
+                BitSet both = (BitSet) atLeast[j - 1].clone();
+                both.and(child);
+                atLeast[j].or(both);
+            }
+        }
+        return atLeast[k];
+    }
+
+    private static boolean satisfied(Policy policy, int index, AttributeSet atts) {
+        if (policy.isLeaf(index)) {
+            return atts.contains(policy.att(index));
+        }
+        int k = policy.threshold(index);
+        int n = policy.childCount(index);
+        int count = 0;
+        for (int j = 0; j < n && count < k && count + n - j >= k; j++) {
+            if (satisfied(policy, policy.child(index, j), atts)) {
+                count++;
+            }
+        }
+        return count >= k;
+    }
+
+    private void checkType(ABEBinaryFormat.Type expected) {
+        if (type != expected) {
+            throw new IllegalStateException("index covers " + type + ", not " + expected);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 把大量同一类型的密文顺序存放在一个文件中，读取时整个文件以只读方式映射到内存（MappedByteBuffer），
+// 解密前先只读取条目头部：CP-ABE为访问策略，KP-ABE为密文属性列表（ABEBinaryFormat记录头部中的属性索引表），
+// 私钥不满足时不解码任何群元素、不做配对即可跳过；满足时也只解码选中的叶子对应的密文组件
+//
+// 文件格式（大端序）：
+//   magic       int    0x41424553 ("ABES")
+//   version     byte   当前为1
+//   type        byte   ABEBinaryFormat.Type.CP_CIPHERTEXT或KP_CIPHERTEXT的code
+//   flags       byte   与ABEBinaryFormat相同，FLAG_COMPRESSED_G1
+//   reserved    byte   保留，当前为0
+//   条目 * count：
+//     policyLen   int    CP-ABE访问策略（Policy.writeTo）的字节数，KP-ABE为0
+//     policy      byte[policyLen]
+//     record      ABEBinaryFormat格式的一条密文记录
+//   索引：
+//     count       int
+//     offsets[]   long * count   每个条目在文件中的偏移量
+//   结尾：
+//     indexOffset long   索引的偏移量
+//     magic       int    0x41424553，用于发现未正常关闭的文件
+//
+// 映射只支持2GB以内的文件；映射后的缓冲区只以绝对位置读取，一个CiphertextStore可以被多个线程同时使用
+public class CiphertextStore {
+    public static final int MAGIC = 0x41424553;
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 12;
+
+    private final ABEBinaryFormat.Type type;
+    private final int flags;
+    private final ByteBuffer buf;
+    private final int[] offsets;
+
+    private CiphertextStore(ABEBinaryFormat.Type type, int flags, ByteBuffer buf, int[] offsets) {
+        this.type = type;
+        this.flags = flags;
+        this.buf = buf;
+        this.offsets = offsets;
+    }
+
+    // 创建新文件，已存在时覆盖；compressG1与ABEBinaryFormat.write的含义相同
+    public static Writer create(Path file, ABEBinaryFormat.Type type, boolean compressG1) throws IOException {
+        if (type != ABEBinaryFormat.Type.CP_CIPHERTEXT && type != ABEBinaryFormat.Type.KP_CIPHERTEXT) {
+            throw new IllegalArgumentException("not a ciphertext type: " + type);
+        }
+        return new Writer(file, type, compressG1);
+    }
+
+    // 映射整个文件并读取索引，映射建立后文件通道即关闭，映射在CiphertextStore被回收前一直有效
+    public static CiphertextStore open(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("ciphertext store larger than 2GB: " + file);
+            }
+            if (size < HEADER_BYTES + 4 + TRAILER_BYTES) {
+                throw new IOException("truncated ciphertext store: " + file);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int limit = buf.limit();
+        if (buf.getInt(0) != MAGIC || buf.getInt(limit - 4) != MAGIC) {
+            throw new IOException("not a ciphertext store or not closed properly: " + file);
+        }
+        int version = buf.get(4) & 0xff;
+        if (version != VERSION) {
+            throw new IOException("unsupported ciphertext store version: " + version);
+        }
+        ABEBinaryFormat.Type type;
+        try {
+            type = ABEBinaryFormat.Type.fromCode(buf.get(5) & 0xff);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        int flags = buf.get(6) & 0xff;
+
+        long indexOffset = buf.getLong(limit - TRAILER_BYTES);
+        if (indexOffset < HEADER_BYTES || indexOffset > limit - TRAILER_BYTES - 4) {
+            throw new IOException("invalid index offset: " + indexOffset);
+        }
+        int index = (int) indexOffset;
+        int count = buf.getInt(index);
+        if (count < 0 || 4 + 8L * count != limit - TRAILER_BYTES - index) {
+            throw new IOException("invalid index entry count: " + count);
+        }
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            long offset = buf.getLong(index + 4 + 8 * i);
+            if (offset < HEADER_BYTES || offset > index - 4) {
+                throw new IOException("invalid offset of entry " + i + ": " + offset);
+            }
+            offsets[i] = (int) offset;
+        }
+        return new CiphertextStore(type, flags, buf, offsets);
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public ABEBinaryFormat.Type getType() {
+        return type;
+    }
+
+    public boolean isCompressed() {
+        return (flags & ABEBinaryFormat.FLAG_COMPRESSED_G1) != 0;
+    }
+
+    // 第i个条目，只解析头部
+    public Entry entry(int i) throws IOException {
+        int offset = offsets[i];
+        int policyLen = buf.getInt(offset);
+        if (policyLen < 0 || policyLen > buf.limit() - offset - 4) {
+            throw new IOException("invalid policy length of entry " + i + ": " + policyLen);
+        }
+        ABEBinaryFormat.RecordView record = ABEBinaryFormat.view(buf, offset + 4 + policyLen, type);
+        return new Entry(i, offset + 4, policyLen, record);
+    }
+
+    // 一个条目：头部已经解析，群元素只在decodeCP/decodeKP中按需解码
+    public class Entry {
+        public final int index;
+        private final int policyOffset;
+        private final int policyLen;
+        private final ABEBinaryFormat.RecordView record;
+
+        Entry(int index, int policyOffset, int policyLen, ABEBinaryFormat.RecordView record) {
+            this.index = index;
+            this.policyOffset = policyOffset;
+            this.policyLen = policyLen;
+            this.record = record;
+        }
+
+        // CP-ABE密文的访问策略，KP-ABE密文返回null
+        public Policy policy() throws IOException {
+            if (policyLen == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[policyLen];
+            buf.get(policyOffset, bytes);
+            return Policy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+
+        // 记录头部中的属性索引表：CP-ABE为访问树叶子的属性，KP-ABE为密文属性列表
+        public int[] attributes() {
+            return record.atts.clone();
+        }
+
+        // 整个条目（含策略）在文件中占用的字节数
+        public int length() {
+            return 4 + policyLen + record.length();
+        }
+
+        // 只解码atts中属性对应的C1, C2（在线/离线加密的密文还有C3），以及C, C0
+        public CPABECiphertext decodeCP(Pairing bp, int[] atts) throws IOException {
+            checkType(ABEBinaryFormat.Type.CP_CIPHERTEXT);
+            Map<Integer, Element> C1 = new LinkedHashMap<>();
+            Map<Integer, Element> C2 = new LinkedHashMap<>();
+            Map<Integer, Element> C3 = new LinkedHashMap<>();
+            for (int att : atts) {
+                int i = indexOf(att);
+                C1.put(att, record.perAtt(i, 0, bp.getG1()));
+                C2.put(att, record.perAtt(i, 1, bp.getG1()));
+                if (record.perAttCount() > 2) {
+                    C3.put(att, record.perAtt(i, 2, bp.getZr()));
+                }
+            }
+            return new CPABECiphertext(record.fixed(0, bp.getGT()), record.fixed(1, bp.getG1()), C1, C2, C3);
+        }
+
+        // 只解码atts中属性对应的E，以及EP
+        public KPABECiphertext decodeKP(Pairing bp, int[] atts) throws IOException {
+            checkType(ABEBinaryFormat.Type.KP_CIPHERTEXT);
+            Map<Integer, Element> E = new LinkedHashMap<>();
+            for (int att : atts) {
+                E.put(att, record.perAtt(indexOf(att), 0, bp.getG1()));
+            }
+            return new KPABECiphertext(atts, record.fixed(0, bp.getGT()), E);
+        }
+
+        private int indexOf(int att) throws IOException {
+            int i = record.indexOf(att);
+            if (i < 0) {
+                throw new IOException("attribute " + att + " not in entry " + index);
+            }
+            return i;
+        }
+
+        private void checkType(ABEBinaryFormat.Type expected) {
+            if (type != expected) {
+                throw new IllegalStateException("entry " + index + " is " + type + ", not " + expected);
+            }
+        }
+    }
+
+    // 顺序追加密文，close时写入索引和结尾；未正常关闭的文件不能被open
+    public static class Writer implements Closeable {
+        private final ABEBinaryFormat.Type type;
+        private final boolean compressG1;
+        private final DataOutputStream out;
+        private long[] offsets = new long[16];
+        private int count;
+
+        private Writer(Path file, ABEBinaryFormat.Type type, boolean compressG1) throws IOException {
+            this.type = type;
+            this.compressG1 = compressG1;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type.code);
+            out.writeByte(compressG1 ? ABEBinaryFormat.FLAG_COMPRESSED_G1 : 0);
+            out.writeByte(0);
+        }
+
+        // policy必须与加密ct时使用的访问策略相同（节点编号一致），返回条目编号
+        public int append(Policy policy, CPABECiphertext ct) throws IOException {
+            checkType(ABEBinaryFormat.Type.CP_CIPHERTEXT);
+            ByteArrayOutputStream policyBytes = new ByteArrayOutputStream();
+            policy.writeTo(new DataOutputStream(policyBytes));
+            int index = begin();
+            out.writeInt(policyBytes.size());
+            policyBytes.writeTo(out);
+            ABEBinaryFormat.write(ct, out, compressG1);
+            return index;
+        }
+
+        public int append(KPABECiphertext ct) throws IOException {
+            checkType(ABEBinaryFormat.Type.KP_CIPHERTEXT);
+            int index = begin();
+            out.writeInt(0);
+            ABEBinaryFormat.write(ct, out, compressG1);
+            return index;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long indexOffset = position();
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(offsets[i]);
+                }
+                out.writeLong(indexOffset);
+                out.writeInt(MAGIC);
+                if (out.size() == Integer.MAX_VALUE) {
+                    throw new IOException("ciphertext store larger than 2GB");
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+
+        private int begin() {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * count);
+            }
+            offsets[count] = position();
+            return count++;
+        }
+
+        // DataOutputStream.size()在达到Integer.MAX_VALUE后不再增长，那时文件已经无法映射，close时报错
+        private long position() {
+            return out.size();
+        }
+
+        private void checkType(ABEBinaryFormat.Type expected) {
+            if (type != expected) {
+                throw new IllegalStateException("store holds " + type + ", not " + expected);
+            }
+        }
+    }
+}
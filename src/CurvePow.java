@@ -0,0 +1,127 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Field;
+import it.unisa.dia.gas.jpbc.Point;
+import it.unisa.dia.gas.plaf.jpbc.field.curve.CurveField;
+
+import java.math.BigInteger;
+
+// 椭圆曲线群（如type a曲线的G1）上任意底数的快速指数运算
+// JPBC自带的powZn在仿射坐标下做倍点和点加，每一步都需要一次模逆运算；
+// 这里改用Jacobian坐标（x=X/Z^2, y=Y/Z^3）和NAF编码的指数，整个过程只在最后做一次模逆
+// 适用于曲线 y^2 = x^3 + a*x + b，结果与JPBC的powZn完全相同
+// 运算时间和内存访问都依赖指数的各个比特（NAF编码中非零位的个数和位置），不是常数时间的，
+// 只能用于公开的指数（如由访问树决定的拉格朗日因子），秘密指数（alpha, r, s, t, 1/z）必须使用powZn或FixedBaseTable
+public class CurvePow {
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+
+    // 计算base^exp，base不是素域上的椭圆曲线点时退化为JPBC的powZn
+    public static Element powZn(Element base, Element exp) {
+        if (!(base.getField() instanceof CurveField) || !(base instanceof Point)) {
+            return base.powZn(exp).getImmutable();
+        }
+        CurveField<?> field = (CurveField<?>) base.getField();
+        Point<?> point = (Point<?>) base;
+        BigInteger k = exp.toBigInteger();
+        if (base.isZero() || k.signum() == 0) {
+            return field.newZeroElement().getImmutable();
+        }
+        BigInteger q = field.getTargetField().getOrder();
+        BigInteger a = field.getA().toBigInteger();
+        BigInteger x = point.getX().toBigInteger();
+        BigInteger y = point.getY().toBigInteger();
+        BigInteger negY = q.subtract(y);
+
+        // 从高位到低位处理NAF编码，每一位先倍点，再根据该位为1/-1加上P/-P
+        int[] naf = naf(k);
+        BigInteger[] R = null;
+        for (int i = naf.length - 1; i >= 0; i--) {
+            if (R != null) {
+                R = twice(R, a, q);
+            }
+            if (naf[i] != 0) {
+                R = addAffine(R, x, naf[i] > 0 ? y : negY, a, q);
+            }
+        }
+        return toElement(field, R, q);
+    }
+
+    // NAF编码：每一位取-1, 0, 1，且不存在相邻的两个非零位，非零位平均只有1/3
+    private static int[] naf(BigInteger k) {
+        int[] naf = new int[k.bitLength() + 1];
+        int i = 0;
+        while (k.signum() > 0) {
+            if (k.testBit(0)) {
+                int digit = 2 - k.mod(BigInteger.valueOf(4)).intValue();
+                naf[i] = digit;
+                k = k.subtract(BigInteger.valueOf(digit));
+            }
+            k = k.shiftRight(1);
+            i++;
+        }
+        return naf;
+    }
+
+    // Jacobian坐标下的倍点，R为null或Z=0表示无穷远点
+    private static BigInteger[] twice(BigInteger[] R, BigInteger a, BigInteger q) {
+        if (R == null || R[2].signum() == 0 || R[1].signum() == 0) {
+            return null;
+        }
+        BigInteger X = R[0], Y = R[1], Z = R[2];
+        BigInteger YY = Y.multiply(Y).mod(q);
+        BigInteger S = X.multiply(YY).shiftLeft(2).mod(q);
+        BigInteger ZZ = Z.multiply(Z).mod(q);
+        BigInteger M = X.multiply(X).multiply(THREE).add(a.multiply(ZZ).multiply(ZZ)).mod(q);
+        BigInteger X3 = M.multiply(M).subtract(S.shiftLeft(1)).mod(q);
+        BigInteger Y3 = M.multiply(S.subtract(X3)).subtract(YY.multiply(YY).shiftLeft(3)).mod(q);
+        BigInteger Z3 = Y.multiply(Z).shiftLeft(1).mod(q);
+        return new BigInteger[]{X3, Y3, Z3};
+    }
+
+    // Jacobian坐标的点R加上仿射坐标的点(x, y)
+    private static BigInteger[] addAffine(BigInteger[] R, BigInteger x, BigInteger y, BigInteger a, BigInteger q) {
+        if (R == null || R[2].signum() == 0) {
+            return new BigInteger[]{x, y, BigInteger.ONE};
+        }
+        BigInteger X1 = R[0], Y1 = R[1], Z1 = R[2];
+        BigInteger Z1Z1 = Z1.multiply(Z1).mod(q);
+        BigInteger U2 = x.multiply(Z1Z1).mod(q);
+        BigInteger S2 = y.multiply(Z1).multiply(Z1Z1).mod(q);
+        BigInteger H = U2.subtract(X1).mod(q);
+        BigInteger r = S2.subtract(Y1).mod(q);
+        if (H.signum() == 0) {
+            // 两点横坐标相同：相同的点做倍点，互为相反数则结果为无穷远点
+            return r.signum() == 0 ? twice(R, a, q) : null;
+        }
+        BigInteger HH = H.multiply(H).mod(q);
+        BigInteger HHH = HH.multiply(H).mod(q);
+        BigInteger V = X1.multiply(HH).mod(q);
+        BigInteger X3 = r.multiply(r).subtract(HHH).subtract(V.shiftLeft(1)).mod(q);
+        BigInteger Y3 = r.multiply(V.subtract(X3)).subtract(Y1.multiply(HHH)).mod(q);
+        BigInteger Z3 = Z1.multiply(H).mod(q);
+        return new BigInteger[]{X3, Y3, Z3};
+    }
+
+    // 转换回仿射坐标，并按JPBC的字节格式（x||y，各占一半长度）构造曲线点
+    private static Element toElement(Field<?> field, BigInteger[] R, BigInteger q) {
+        if (R == null || R[2].signum() == 0) {
+            return field.newZeroElement().getImmutable();
+        }
+        BigInteger zInv = R[2].modInverse(q);
+        BigInteger zInv2 = zInv.multiply(zInv).mod(q);
+        BigInteger x = R[0].multiply(zInv2).mod(q);
+        BigInteger y = R[1].multiply(zInv2).multiply(zInv).mod(q);
+
+        int len = field.getLengthInBytes() / 2;
+        byte[] bytes = new byte[2 * len];
+        writeFixed(x, bytes, 0, len);
+        writeFixed(y, bytes, len, len);
+        return field.newElementFromBytes(bytes).getImmutable();
+    }
+
+    private static void writeFixed(BigInteger v, byte[] out, int offset, int len) {
+        byte[] raw = v.toByteArray();
+        int start = raw.length > len ? raw.length - len : 0;
+        int count = raw.length - start;
+        System.arraycopy(raw, start, out, offset + len - count, count);
+    }
+}
@@ -0,0 +1,11 @@
+// 解密时的秘密恢复方式
+public enum DecryptMode {
+    // 原始方式：每个满足条件的叶子节点各自计算完整配对，在GT上逐层做拉格朗日插值
+    RECURSIVE,
+    // 先只根据属性选出代价（叶子个数）最小的一组满足条件的叶子节点，把各层拉格朗日因子在Zr中相乘，
+    // 每个叶子只做一次GT上的指数运算（因子为1时不做），只为选中的叶子计算配对
+    FLATTENED,
+    // 与FLATTENED相同地选出叶子节点，把各层拉格朗日因子相乘后作为G1上的指数，
+    // 再把所有配对合并为一次配对连乘，只做一次最终幂运算
+    PRODUCT_PAIRING
+}
@@ -0,0 +1,56 @@
+import it.unisa.dia.gas.jpbc.Element;
+
+// 解密服务返回的结果：成功时message为解密得到的明文（外包解密的转换则为partial），失败时status说明原因，
+// 不抛出异常也不退出进程
+public final class DecryptResult {
+    public enum Status {
+        // 解密成功
+        OK,
+        // 属性不满足访问树
+        NOT_SATISFIED,
+        // 没有该编号的私钥，且没有配置私钥加载器
+        UNKNOWN_KEY,
+        // 私钥加载失败（文件不存在、格式错误等）
+        KEY_LOAD_FAILED,
+        // 密文或访问树与私钥不匹配，或者缺少必要的组件
+        INVALID_INPUT,
+        // 其他错误
+        FAILED
+    }
+
+    public final Status status;
+    public final Element message;
+    // 服务端转换得到的部分解密密文，只在转换成功时不为null
+    public final CPABEPartialCiphertext partial;
+    public final String error;
+    public final Throwable cause;
+
+    private DecryptResult(Status status, Element message, CPABEPartialCiphertext partial, String error, Throwable cause) {
+        this.status = status;
+        this.message = message;
+        this.partial = partial;
+        this.error = error;
+        this.cause = cause;
+    }
+
+    public static DecryptResult ok(Element message) {
+        return new DecryptResult(Status.OK, message, null, null, null);
+    }
+
+    public static DecryptResult transformed(CPABEPartialCiphertext partial) {
+        return new DecryptResult(Status.OK, null, partial, null, null);
+    }
+
+    public static DecryptResult failure(Status status, String error, Throwable cause) {
+        return new DecryptResult(status, null, null, error, cause);
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    @Override
+    public String toString() {
+        return isOk() ? "DecryptResult{OK}" : "DecryptResult{" + status + ": " + error + "}";
+    }
+}
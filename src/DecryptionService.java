@@ -0,0 +1,603 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+// 并发解密服务：按私钥编号缓存解析好的私钥（CP-ABE私钥同时做配对预处理），在线程池或虚拟线程上执行解密
+// 所有结果都以DecryptResult返回，任何错误都不会打印到标准输出或退出进程
+// 解密过程中的访问树状态保存在每个线程各自的PolicyScratch中，引擎和Policy在线程之间共享且不会被修改
+// 对CiphertextStore中的大量密文，decryptAllCP/decryptAllKP先用CiphertextIndex筛出私钥能够解密的条目，只解密这些条目
+public class DecryptionService implements AutoCloseable {
+    // 由KeyLoader加载的私钥默认最多缓存的个数（CP-ABE和KP-ABE各自计算）
+    public static final int DEFAULT_KEY_CACHE_CAPACITY = 1024;
+    // 批量解密时每个任务处理的候选条目个数
+    private static final int BULK_BATCH = 16;
+    // close等待已提交的请求完成的最长时间
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+    private static final Pattern KEY_ID = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    // 按私钥编号加载私钥，例如从文件或密钥管理服务读取
+    public interface KeyLoader<K> {
+        K load(String keyId) throws IOException;
+    }
+
+    private final CPABEEngine cpEngine;
+    private final KPABEEngine kpEngine;
+    private final ExecutorService executor;
+    // 由服务自己创建的线程池在close时关闭，调用方传入的线程池由调用方管理
+    private final boolean ownsExecutor;
+    private final KeyCache<CPABEDecryptionKey> cpKeys = new KeyCache<>(DEFAULT_KEY_CACHE_CAPACITY);
+    private final KeyCache<KPABESecretKey> kpKeys = new KeyCache<>(DEFAULT_KEY_CACHE_CAPACITY);
+    // 服务自己的线程池中尚未完成的请求 -> close超时后以FAILED完成该请求，返回是否由此完成
+    private final ConcurrentHashMap<CompletableFuture<?>, BooleanSupplier> inFlight = new ConcurrentHashMap<>();
+    private volatile KeyLoader<CPABESecretKey> cpKeyLoader;
+    private volatile KeyLoader<KPABESecretKey> kpKeyLoader;
+    private volatile DecryptMode mode = DecryptMode.FLATTENED;
+
+    // cpEngine和kpEngine可以有一个为null，此时对应方案的解密请求返回FAILED
+    public DecryptionService(CPABEEngine cpEngine, KPABEEngine kpEngine, ExecutorService executor) {
+        this(cpEngine, kpEngine, executor, false);
+    }
+
+    private DecryptionService(CPABEEngine cpEngine, KPABEEngine kpEngine, ExecutorService executor, boolean ownsExecutor) {
+        this.cpEngine = cpEngine;
+        this.kpEngine = kpEngine;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    // 使用threads个线程的固定大小线程池
+    public static DecryptionService withBoundedPool(CPABEEngine cpEngine, KPABEEngine kpEngine, int threads) {
+        return new DecryptionService(cpEngine, kpEngine, Executors.newFixedThreadPool(threads), true);
+    }
+
+    // 每个请求一个虚拟线程，需要Java 21及以上，在更早的版本上抛出UnsupportedOperationException
+    public static DecryptionService withVirtualThreads(CPABEEngine cpEngine, KPABEEngine kpEngine) {
+        ExecutorService executor;
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later", e);
+        }
+        return new DecryptionService(cpEngine, kpEngine, executor, true);
+    }
+
+    // 从目录dir中读取 <keyId>.properties 格式的CP-ABE私钥
+    public static KeyLoader<CPABESecretKey> cpPropertiesLoader(Pairing bp, String dir) {
+        return keyId -> CPABESecretKey.fromProperties(ABEUtils.loadProperties(keyFile(dir, keyId, ".properties")), bp);
+    }
+
+    // 从目录dir中读取 <keyId>.bin 二进制格式的CP-ABE私钥
+    public static KeyLoader<CPABESecretKey> cpBinaryLoader(Pairing bp, String dir) {
+        return keyId -> {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(keyFile(dir, keyId, ".bin")))) {
+                return ABEBinaryFormat.readCPABESecretKey(in, bp);
+            }
+        };
+    }
+
+    public static KeyLoader<KPABESecretKey> kpPropertiesLoader(Pairing bp, String dir) {
+        return keyId -> KPABESecretKey.fromProperties(ABEUtils.loadProperties(keyFile(dir, keyId, ".properties")), bp);
+    }
+
+    public static KeyLoader<KPABESecretKey> kpBinaryLoader(Pairing bp, String dir) {
+        return keyId -> {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(keyFile(dir, keyId, ".bin")))) {
+                return ABEBinaryFormat.readKPABESecretKey(in, bp);
+            }
+        };
+    }
+
+    // 私钥编号来自请求方，只接受字母、数字和 _ . - 组成的编号，并确认解析后的文件仍在dir之中，
+    // 像 ../../etc/x 这样的编号不能读到目录之外的文件
+    static String keyFile(String dir, String keyId, String suffix) throws IOException {
+        if (keyId == null || !KEY_ID.matcher(keyId).matches()) {
+            throw new IOException("invalid key id: " + keyId);
+        }
+        Path base = Paths.get(dir).toAbsolutePath().normalize();
+        Path file = base.resolve(keyId + suffix).normalize();
+        if (!file.startsWith(base) || !base.equals(file.getParent())) {
+            throw new IOException("key id " + keyId + " resolves outside " + dir);
+        }
+        return file.toString();
+    }
+
+    // 缓存中没有的私钥编号通过loader加载，为null时只使用register登记的私钥
+    public void setCPKeyLoader(KeyLoader<CPABESecretKey> loader) {
+        this.cpKeyLoader = loader;
+    }
+
+    public void setKPKeyLoader(KeyLoader<KPABESecretKey> loader) {
+        this.kpKeyLoader = loader;
+    }
+
+    // 由KeyLoader加载的私钥最多缓存capacity个（CP-ABE和KP-ABE各自计算），超出时淘汰最久未使用的私钥，
+    // 被淘汰的私钥在下次使用时重新加载；register登记的私钥不计入容量，也不会被淘汰
+    public void setKeyCacheCapacity(int capacity) {
+        cpKeys.setCapacity(capacity);
+        kpKeys.setCapacity(capacity);
+    }
+
+    public int getKeyCacheCapacity() {
+        return cpKeys.capacity;
+    }
+
+    public void setMode(DecryptMode mode) {
+        this.mode = mode;
+    }
+
+    public DecryptMode getMode() {
+        return mode;
+    }
+
+    public void registerCPKey(String keyId, CPABESecretKey sk) {
+        cpKeys.register(keyId, cpEngine.prepare(sk));
+    }
+
+    public void registerKPKey(String keyId, KPABESecretKey sk) {
+        kpKeys.register(keyId, sk);
+    }
+
+    // 私钥被吊销或更新时从缓存中移除
+    public void evictKey(String keyId) {
+        cpKeys.remove(keyId);
+        kpKeys.remove(keyId);
+    }
+
+    public int cachedKeyCount() {
+        return cpKeys.size() + kpKeys.size();
+    }
+
+    // ---------------------------------------------------------------- 解密
+
+    public CompletableFuture<DecryptResult> decryptCP(String keyId, Policy policy, CPABECiphertext ct) {
+        return submit(() -> decryptCPNow(keyId, policy, ct));
+    }
+
+    public CompletableFuture<DecryptResult> decryptKP(String keyId, Policy policy, KPABECiphertext ct) {
+        return submit(() -> decryptKPNow(keyId, policy, ct));
+    }
+
+    // 在当前线程中解密
+    public DecryptResult decryptCPNow(String keyId, Policy policy, CPABECiphertext ct) {
+        DecryptResult invalid = checkCP(policy, ct);
+        if (invalid != null) {
+            return invalid;
+        }
+        KeyLookup<CPABEDecryptionKey> lookup = cpKey(keyId);
+        if (lookup.failure != null) {
+            return lookup.failure;
+        }
+        return run(() -> cpEngine.decrypt(policy, ct, lookup.key, mode));
+    }
+
+    public DecryptResult decryptKPNow(String keyId, Policy policy, KPABECiphertext ct) {
+        KeyLookup<KPABESecretKey> lookup = kpKey(keyId);
+        if (lookup.failure != null) {
+            return lookup.failure;
+        }
+        DecryptResult invalid = checkKP(policy, ct, lookup.key);
+        if (invalid != null) {
+            return invalid;
+        }
+        return run(() -> kpEngine.decrypt(policy, ct, lookup.key, mode));
+    }
+
+    // ---------------------------------------------------------------- 批量解密
+
+    // 批量解密CP-ABE密文库：先用index在位图上筛出私钥属性能够满足的条目，不做任何配对，
+    // 只有这些条目会被解码并分批提交到线程池解密，其余条目不出现在结果中
+    public CompletableFuture<BulkResult> decryptAllCP(String keyId, CiphertextStore store, CiphertextIndex index) {
+        KeyLookup<CPABEDecryptionKey> lookup = cpKey(keyId);
+        if (lookup.failure != null) {
+            return CompletableFuture.completedFuture(new BulkResult(lookup.failure, new TreeMap<>()));
+        }
+        BitSet candidates = index.candidates(lookup.key.sk.userAttList);
+        return decryptAll(candidates, i -> cpEngine.decrypt(store.entry(i), lookup.key, mode));
+    }
+
+    // 批量解密KP-ABE密文库：私钥的访问策略keyPolicy直接在index的属性位图上求值得到候选条目
+    public CompletableFuture<BulkResult> decryptAllKP(String keyId, Policy keyPolicy, CiphertextStore store,
+                                                      CiphertextIndex index) {
+        KeyLookup<KPABESecretKey> lookup = kpKey(keyId);
+        if (lookup.failure != null) {
+            return CompletableFuture.completedFuture(new BulkResult(lookup.failure, new TreeMap<>()));
+        }
+        DecryptResult invalid = checkKeyPolicy(keyPolicy, lookup.key);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(new BulkResult(invalid, new TreeMap<>()));
+        }
+        BitSet candidates = index.candidates(keyPolicy);
+        return decryptAll(candidates, i -> kpEngine.decrypt(keyPolicy, store.entry(i), lookup.key, mode));
+    }
+
+    // 批量解密的结果：私钥无法加载时keyFailure不为null且results为空，否则results为 候选条目编号 -> 解密结果
+    public static final class BulkResult {
+        public final DecryptResult keyFailure;
+        public final SortedMap<Integer, DecryptResult> results;
+
+        BulkResult(DecryptResult keyFailure, SortedMap<Integer, DecryptResult> results) {
+            this.keyFailure = keyFailure;
+            this.results = Collections.unmodifiableSortedMap(results);
+        }
+
+        public boolean isOk() {
+            return keyFailure == null && results.values().stream().allMatch(DecryptResult::isOk);
+        }
+    }
+
+    private interface EntryCall {
+        Element decrypt(int entry) throws IOException;
+    }
+
+    private CompletableFuture<BulkResult> decryptAll(BitSet candidates, EntryCall call) {
+        int[] entries = candidates.stream().toArray();
+        return runBatches(entries.length, t -> run(() -> {
+            try {
+                return call.decrypt(entries[t]);
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("malformed entry " + entries[t], e);
+            }
+        })).thenApply(list -> {
+            SortedMap<Integer, DecryptResult> results = new TreeMap<>();
+            for (int t = 0; t < entries.length; t++) {
+                results.put(entries[t], list.get(t));
+            }
+            return new BulkResult(null, results);
+        });
+    }
+
+    // 把count个任务按BULK_BATCH个一批提交，减少小任务的调度开销，同时让各个线程的负载大致均衡；
+    // 返回的结果与任务编号一一对应
+    private CompletableFuture<List<DecryptResult>> runBatches(int count, IntFunction<DecryptResult> task) {
+        List<CompletableFuture<DecryptResult[]>> batches = new ArrayList<>();
+        for (int from = 0; from < count; from += BULK_BATCH) {
+            int start = from;
+            int size = Math.min(count, from + BULK_BATCH) - from;
+            batches.add(submitBatch(() -> {
+                DecryptResult[] results = new DecryptResult[size];
+                for (int t = 0; t < size; t++) {
+                    results[t] = task.apply(start + t);
+                }
+                return results;
+            }, size));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<DecryptResult> results = new ArrayList<>(count);
+            for (CompletableFuture<DecryptResult[]> batch : batches) {
+                results.addAll(Arrays.asList(batch.join()));
+            }
+            return results;
+        });
+    }
+
+    private CompletableFuture<DecryptResult[]> submitBatch(Supplier<DecryptResult[]> task, int size) {
+        return submit(task, e -> {
+            DecryptResult[] results = new DecryptResult[size];
+            Arrays.fill(results, DecryptResult.failure(DecryptResult.Status.FAILED, "decryption service is shut down", e));
+            return results;
+        });
+    }
+
+    // ---------------------------------------------------------------- 外包解密
+
+    // 服务端的转换：keyId对应的是客户端的转换私钥（CPABEOutsourcedKey.transformKey），与普通私钥一样
+    // 通过registerCPKey登记或由cpKeyLoader加载并做配对预处理；全部配对和秘密恢复都在服务端完成，
+    // 成功时结果的partial为部分解密的密文，客户端以CPABEEngine.decrypt(partial, retrievalKey)完成解密
+    public CompletableFuture<DecryptResult> transformCP(String keyId, Policy policy, CPABECiphertext ct) {
+        return submit(() -> transformCPNow(keyId, policy, ct));
+    }
+
+    public DecryptResult transformCPNow(String keyId, Policy policy, CPABECiphertext ct) {
+        DecryptResult invalid = checkCP(policy, ct);
+        if (invalid != null) {
+            return invalid;
+        }
+        KeyLookup<CPABEDecryptionKey> lookup = cpKey(keyId);
+        if (lookup.failure != null) {
+            return lookup.failure;
+        }
+        return run(() -> cpEngine.transform(policy, ct, lookup.key, mode), DecryptResult::transformed);
+    }
+
+    // 批量转换同一个转换私钥的多个密文，policies.get(i)为cts.get(i)的访问策略，结果与输入一一对应
+    // 私钥只查找一次，密文按批提交到线程池
+    public CompletableFuture<List<DecryptResult>> transformCPBatch(String keyId, List<Policy> policies,
+                                                                    List<CPABECiphertext> cts) {
+        if (policies.size() != cts.size()) {
+            throw new IllegalArgumentException("policies and ciphertexts differ in size");
+        }
+        KeyLookup<CPABEDecryptionKey> lookup = cpKey(keyId);
+        if (lookup.failure != null) {
+            return CompletableFuture.completedFuture(Collections.nCopies(cts.size(), lookup.failure));
+        }
+        return runBatches(cts.size(), i -> {
+            DecryptResult invalid = checkCP(policies.get(i), cts.get(i));
+            return invalid != null ? invalid
+                    : run(() -> cpEngine.transform(policies.get(i), cts.get(i), lookup.key, mode), DecryptResult::transformed);
+        });
+    }
+
+    // ---------------------------------------------------------------- 私钥
+
+    // 私钥查找的结果，failure不为null时key为null
+    private static final class KeyLookup<K> {
+        final K key;
+        final DecryptResult failure;
+
+        KeyLookup(K key, DecryptResult failure) {
+            this.key = key;
+            this.failure = failure;
+        }
+    }
+
+    private KeyLookup<CPABEDecryptionKey> cpKey(String keyId) {
+        if (cpEngine == null) {
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.FAILED, "CP-ABE is not configured", null));
+        }
+        return lookup(cpKeys, cpKeyLoader, keyId, cpEngine::prepare);
+    }
+
+    private KeyLookup<KPABESecretKey> kpKey(String keyId) {
+        if (kpEngine == null) {
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.FAILED, "KP-ABE is not configured", null));
+        }
+        return lookup(kpKeys, kpKeyLoader, keyId, Function.identity());
+    }
+
+    // 缓存中没有时通过loader加载并由prepare转换后放入缓存；加载在锁外进行，多个线程同时加载同一私钥时只保留先放入缓存的一份
+    private static <S, K> KeyLookup<K> lookup(KeyCache<K> cache, KeyLoader<S> loader, String keyId,
+                                              Function<S, K> prepare) {
+        K key = cache.get(keyId);
+        if (key != null) {
+            return new KeyLookup<>(key, null);
+        }
+        if (loader == null) {
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.UNKNOWN_KEY, "unknown key id: " + keyId, null));
+        }
+        S loaded;
+        try {
+            loaded = loader.load(keyId);
+        }
+        catch (IOException e) {
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.KEY_LOAD_FAILED, "failed to load key " + keyId, e));
+        }
+        catch (RuntimeException e) {
+            // 私钥文件内容不完整或格式错误
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.KEY_LOAD_FAILED, "malformed key " + keyId, e));
+        }
+        if (loaded == null) {
+            return new KeyLookup<>(null, DecryptResult.failure(DecryptResult.Status.KEY_LOAD_FAILED, "no key for id " + keyId, null));
+        }
+        return new KeyLookup<>(cache.putLoaded(keyId, prepare.apply(loaded)), null);
+    }
+
+    // 私钥缓存：register登记的私钥一直保留；由KeyLoader加载的私钥放在按LRU淘汰的有界缓存中
+    private static final class KeyCache<K> {
+        private final ConcurrentHashMap<String, K> registered = new ConcurrentHashMap<>();
+        // accessOrder为true的LinkedHashMap即LRU，所有访问都在synchronized(loaded)中进行
+        private final LinkedHashMap<String, K> loaded;
+        private volatile int capacity;
+
+        KeyCache(int capacity) {
+            this.capacity = capacity;
+            this.loaded = new LinkedHashMap<String, K>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, K> eldest) {
+                    return size() > KeyCache.this.capacity;
+                }
+            };
+        }
+
+        K get(String keyId) {
+            K key = registered.get(keyId);
+            if (key != null) {
+                return key;
+            }
+            synchronized (loaded) {
+                return loaded.get(keyId);
+            }
+        }
+
+        void register(String keyId, K key) {
+            registered.put(keyId, key);
+            synchronized (loaded) {
+                loaded.remove(keyId);
+            }
+        }
+
+        // 已有其他线程放入的私钥时返回那一份
+        K putLoaded(String keyId, K key) {
+            synchronized (loaded) {
+                K existing = loaded.putIfAbsent(keyId, key);
+                return existing != null ? existing : key;
+            }
+        }
+
+        void remove(String keyId) {
+            registered.remove(keyId);
+            synchronized (loaded) {
+                loaded.remove(keyId);
+            }
+        }
+
+        int size() {
+            synchronized (loaded) {
+                return registered.size() + loaded.size();
+            }
+        }
+
+        void setCapacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            synchronized (loaded) {
+                this.capacity = capacity;
+                Iterator<String> eldest = loaded.keySet().iterator();
+                while (loaded.size() > capacity) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 输入检查
+
+    // 密文必须带有访问树每个叶子属性的组件，在线/离线加密的密文还要带有C3；不满足时返回INVALID_INPUT
+    private static DecryptResult checkCP(Policy policy, CPABECiphertext ct) {
+        if (policy == null || ct == null) {
+            return invalid("policy and ciphertext must not be null");
+        }
+        for (int att : policy.attributes()) {
+            if (!ct.C1.containsKey(att) || !ct.C2.containsKey(att) || (ct.isOnline() && !ct.C3.containsKey(att))) {
+                return invalid("ciphertext has no components for attribute " + att + " of the access policy");
+            }
+        }
+        return null;
+    }
+
+    // 密文必须带有属性列表中每个属性的组件，私钥必须与访问树keyPolicy对应
+    private static DecryptResult checkKP(Policy keyPolicy, KPABECiphertext ct, KPABESecretKey sk) {
+        if (ct == null) {
+            return invalid("ciphertext must not be null");
+        }
+        for (int att : ct.messageAttList) {
+            if (!ct.E.containsKey(att)) {
+                return invalid("ciphertext has no component for attribute " + att);
+            }
+        }
+        return checkKeyPolicy(keyPolicy, sk);
+    }
+
+    private static DecryptResult checkKeyPolicy(Policy keyPolicy, KPABESecretKey sk) {
+        if (keyPolicy == null) {
+            return invalid("key policy must not be null");
+        }
+        for (int att : keyPolicy.attributes()) {
+            if (!sk.D.containsKey(att)) {
+                return invalid("key has no component for attribute " + att + " of the key policy");
+            }
+        }
+        return null;
+    }
+
+    private static DecryptResult invalid(String error) {
+        return DecryptResult.failure(DecryptResult.Status.INVALID_INPUT, error, null);
+    }
+
+    private interface DecryptCall<T> {
+        T decrypt();
+    }
+
+    private static DecryptResult run(DecryptCall<Element> call) {
+        return run(call, DecryptResult::ok);
+    }
+
+    // call返回null表示属性不满足访问树，否则由ok包装为结果
+    private static <T> DecryptResult run(DecryptCall<T> call, Function<T, DecryptResult> ok) {
+        try {
+            T result = call.decrypt();
+            if (result == null) {
+                return DecryptResult.failure(DecryptResult.Status.NOT_SATISFIED, "attributes do not satisfy the access policy", null);
+            }
+            return ok.apply(result);
+        }
+        catch (IllegalArgumentException e) {
+            // 引擎对不合法输入的检查，例如属性不在属性全集中
+            return DecryptResult.failure(DecryptResult.Status.INVALID_INPUT, String.valueOf(e.getMessage()), e);
+        }
+        catch (RuntimeException e) {
+            // 其他运行时异常（包括NullPointerException）不是输入错误，原样保留在cause中
+            return DecryptResult.failure(DecryptResult.Status.FAILED, String.valueOf(e.getMessage()), e);
+        }
+    }
+
+    private CompletableFuture<DecryptResult> submit(Supplier<DecryptResult> task) {
+        return submit(task, e -> DecryptResult.failure(DecryptResult.Status.FAILED, "decryption service is shut down", e));
+    }
+
+    // 线程池已关闭时以shutDown的结果完成；服务自己的线程池中的请求在完成前记录在inFlight中，供close超时后处理
+    private <T> CompletableFuture<T> submit(Supplier<T> task, Function<Throwable, T> shutDown) {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(task, executor);
+        }
+        catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(shutDown.apply(e));
+        }
+        if (ownsExecutor) {
+            inFlight.put(future, () -> future.complete(shutDown.apply(null)));
+            future.whenComplete((result, e) -> inFlight.remove(future));
+        }
+        return future;
+    }
+
+    // 等待已提交的请求完成，最多等待CLOSE_TIMEOUT_SECONDS秒；超时或等待时被中断则调用shutdownNow，
+    // 仍未完成的请求以FAILED结束（正在执行的配对运算不响应中断，它们的结果被丢弃），
+    // 并抛出IllegalStateException报告被放弃的请求个数；被中断时保留线程的中断状态
+    @Override
+    public void close() {
+        if (!ownsExecutor) {
+            return;
+        }
+        executor.shutdown();
+        boolean interrupted = false;
+        try {
+            if (executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                return;
+            }
+        }
+        catch (InterruptedException e) {
+            interrupted = true;
+        }
+        int queued = executor.shutdownNow().size();
+        int abandoned = 0;
+        for (BooleanSupplier fail : inFlight.values()) {
+            if (fail.getAsBoolean()) {
+                abandoned++;
+            }
+        }
+        inFlight.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (abandoned > 0) {
+            throw new IllegalStateException("decryption service did not finish within " + CLOSE_TIMEOUT_SECONDS
+                    + " seconds" + (interrupted ? " (interrupted)" : "") + ": " + abandoned
+                    + " requests abandoned, " + queued + " of the queued tasks never started");
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// CP-ABE的在线/离线加密：后台线程预先计算与消息和访问策略无关的加密材料并放入有界的池中，
+// 请求到来时encrypt只做秘密共享（Zr上的运算）和少量乘法，不做任何群上的指数运算
+//   - session：s, e(g,g)^(alpha s), g^s，每条密文一份
+//   - 叶子材料：按属性分别缓存 lambda', C1' = g_beta^lambda' H(att)^(-r), C2 = g^r，每个叶子一份；
+//     由于H(att)依赖于属性，叶子材料只能为具体的属性预先计算，属性在第一次被加密时登记，之后由后台线程补充
+// 得到的密文带有修正值C3（见CPABECiphertext），解密时多一次配对
+// 池为空时在当前线程中即时计算，结果仍然正确，只是这一次没有加速；命中和未命中的次数可以用来调整池的大小
+// 每份材料只被取出一次，池可以被多个线程同时使用
+public class EncryptionPool implements AutoCloseable {
+    public static final int DEFAULT_SESSION_CAPACITY = 64;
+    public static final int DEFAULT_LEAF_CAPACITY = 64;
+
+    // 一份session材料
+    public static final class Session {
+        public final Element s;
+        public final Element egg_alphas;
+        public final Element g_s;
+
+        Session(Element s, Element egg_alphas, Element g_s) {
+            this.s = s.getImmutable();
+            this.egg_alphas = egg_alphas.getImmutable();
+            this.g_s = g_s.getImmutable();
+        }
+    }
+
+    // 一份与属性att绑定的叶子材料
+    public static final class Leaf {
+        public final int att;
+        public final Element lambda;
+        public final Element C1;
+        public final Element C2;
+
+        Leaf(int att, Element lambda, Element C1, Element C2) {
+            this.att = att;
+            this.lambda = lambda.getImmutable();
+            this.C1 = C1.getImmutable();
+            this.C2 = C2.getImmutable();
+        }
+    }
+
+    private final CPABEEngine engine;
+    private final int sessionCapacity;
+    private final int leafCapacity;
+    private final BlockingQueue<Session> sessions;
+    private final ConcurrentHashMap<Integer, BlockingQueue<Leaf>> leaves = new ConcurrentHashMap<>();
+    private final Thread[] producers;
+    // 取出材料或登记新属性后在demand上通知等待中的后台线程
+    private final Object demand = new Object();
+    private volatile boolean closed;
+
+    private final AtomicLong sessionHits = new AtomicLong();
+    private final AtomicLong sessionMisses = new AtomicLong();
+    private final AtomicLong leafHits = new AtomicLong();
+    private final AtomicLong leafMisses = new AtomicLong();
+    private final AtomicLong produced = new AtomicLong();
+
+    public EncryptionPool(CPABEEngine engine) {
+        this(engine, DEFAULT_SESSION_CAPACITY, DEFAULT_LEAF_CAPACITY, 1);
+    }
+
+    // sessionCapacity：session材料的份数；leafCapacity：每个属性的叶子材料份数；
+    // refillThreads：后台补充的线程数，为0时不启动后台线程，只能通过fill在调用方线程中补充
+    public EncryptionPool(CPABEEngine engine, int sessionCapacity, int leafCapacity, int refillThreads) {
+        if (sessionCapacity <= 0 || leafCapacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + sessionCapacity + ", " + leafCapacity);
+        }
+        if (refillThreads < 0) {
+            throw new IllegalArgumentException("refillThreads must not be negative: " + refillThreads);
+        }
+        this.engine = engine;
+        this.sessionCapacity = sessionCapacity;
+        this.leafCapacity = leafCapacity;
+        this.sessions = new ArrayBlockingQueue<>(sessionCapacity);
+        this.producers = new Thread[refillThreads];
+        for (int i = 0; i < refillThreads; i++) {
+            producers[i] = new Thread(this::produce, "encryption-pool-" + i);
+            producers[i].setDaemon(true);
+            producers[i].start();
+        }
+    }
+
+    // 预先登记会出现在访问策略中的属性，后台线程随即为它们补充叶子材料
+    public void register(int... atts) {
+        for (int att : atts) {
+            queue(att);
+        }
+        signal();
+    }
+
+    // 在当前线程中把所有池补满，用于没有后台线程的池，或者在开始处理请求前预热
+    public void fill() {
+        while (!closed && refillOnce()) {
+            // refillOnce每次补充一份
+        }
+    }
+
+    public CPABECiphertext encrypt(Element message, Node[] accessTree) {
+        return encrypt(message, Policy.of(accessTree));
+    }
+
+    public CPABECiphertext encrypt(Element message, Policy policy) {
+        if (closed) {
+            throw new IllegalStateException("encryption pool is closed");
+        }
+        CPABECiphertext ct = engine.encryptOnline(message, policy, takeSession(), this::takeLeaf);
+        signal();
+        return ct;
+    }
+
+    public CPABEEngine getEngine() {
+        return engine;
+    }
+
+    public int getSessionCapacity() {
+        return sessionCapacity;
+    }
+
+    public int getLeafCapacity() {
+        return leafCapacity;
+    }
+
+    public int getRefillThreads() {
+        return producers.length;
+    }
+
+    public int availableSessions() {
+        return sessions.size();
+    }
+
+    public int availableLeaves(int att) {
+        BlockingQueue<Leaf> queue = leaves.get(att);
+        return queue == null ? 0 : queue.size();
+    }
+
+    // 已登记的属性个数
+    public int attributeCount() {
+        return leaves.size();
+    }
+
+    public long getSessionHits() {
+        return sessionHits.get();
+    }
+
+    public long getSessionMisses() {
+        return sessionMisses.get();
+    }
+
+    public long getLeafHits() {
+        return leafHits.get();
+    }
+
+    public long getLeafMisses() {
+        return leafMisses.get();
+    }
+
+    // 后台线程和fill一共预先计算的材料份数
+    public long getProduced() {
+        return produced.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EncryptionPool{sessions=" + sessions.size() + "/" + sessionCapacity + ", attributes=" + leaves.size()
+                + ", sessionHits=" + sessionHits + ", sessionMisses=" + sessionMisses
+                + ", leafHits=" + leafHits + ", leafMisses=" + leafMisses + ", produced=" + produced + "}";
+    }
+
+    // 停止后台线程，池中剩余的材料被丢弃；等待时被中断则保留线程的中断状态，不再等待其余的后台线程
+    @Override
+    public void close() {
+        closed = true;
+        signal();
+        try {
+            for (Thread producer : producers) {
+                producer.join();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sessions.clear();
+        leaves.clear();
+    }
+
+    private Session takeSession() {
+        Session session = sessions.poll();
+        if (session != null) {
+            sessionHits.incrementAndGet();
+            return session;
+        }
+        sessionMisses.incrementAndGet();
+        return engine.offlineSession();
+    }
+
+    private Leaf takeLeaf(int att) {
+        Leaf leaf = queue(att).poll();
+        if (leaf != null) {
+            leafHits.incrementAndGet();
+            return leaf;
+        }
+        leafMisses.incrementAndGet();
+        return engine.offlineLeaf(att);
+    }
+
+    private BlockingQueue<Leaf> queue(int att) {
+        return leaves.computeIfAbsent(att, a -> new ArrayBlockingQueue<>(leafCapacity));
+    }
+
+    // 补充一份最缺的材料：先补session，再补剩余份数最少的属性；都已补满时返回false
+    private boolean refillOnce() {
+        if (sessions.remainingCapacity() > 0) {
+            if (sessions.offer(engine.offlineSession())) {
+                produced.incrementAndGet();
+            }
+            return true;
+        }
+        Map.Entry<Integer, BlockingQueue<Leaf>> emptiest = null;
+        for (Map.Entry<Integer, BlockingQueue<Leaf>> entry : leaves.entrySet()) {
+            if (emptiest == null || entry.getValue().size() < emptiest.getValue().size()) {
+                emptiest = entry;
+            }
+        }
+        if (emptiest == null || emptiest.getValue().remainingCapacity() == 0) {
+            return false;
+        }
+        // 多个后台线程可能同时补充同一个池，池已满时offer失败，这份材料被丢弃
+        if (emptiest.getValue().offer(engine.offlineLeaf(emptiest.getKey()))) {
+            produced.incrementAndGet();
+        }
+        return true;
+    }
+
+    private boolean full() {
+        if (sessions.remainingCapacity() > 0) {
+            return false;
+        }
+        for (BlockingQueue<Leaf> queue : leaves.values()) {
+            if (queue.remainingCapacity() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void produce() {
+        while (!closed) {
+            if (refillOnce()) {
+                continue;
+            }
+            synchronized (demand) {
+                // 在锁内再检查一次，encrypt取出材料后在同一个锁上通知，不会丢失唤醒
+                while (!closed && full()) {
+                    try {
+                        demand.wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void signal() {
+        if (producers.length == 0) {
+            return;
+        }
+        synchronized (demand) {
+            demand.notifyAll();
+        }
+    }
+}
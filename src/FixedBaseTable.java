@@ -0,0 +1,64 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.ElementPowPreProcessing;
+import it.unisa.dia.gas.plaf.jpbc.field.base.AbstractElementPowPreProcessing;
+
+// 固定底数的窗口预计算表
+// 对于底数g，预先计算 g^(j * 2^(k*i))，其中k为窗口大小，i遍历指数的每一个k比特窗口，j取0到2^k-1
+// 之后每次计算g^x只需要按窗口查表并做ceil(bits/k)次乘法，不再需要平方运算
+// 表在构造后只读，可以被多个线程同时使用
+public class FixedBaseTable {
+    public static final int DEFAULT_WINDOW = AbstractElementPowPreProcessing.DEFAULT_K;
+    public static final int MAX_WINDOW = 16;
+
+    private final Element base;
+    private final int window;
+    private final ElementPowPreProcessing table;
+
+    public FixedBaseTable(Element base, int window) {
+        if (window < 1 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("window size must be in [1, " + MAX_WINDOW + "]: " + window);
+        }
+        this.base = base.getImmutable();
+        this.window = window;
+        this.table = new AbstractElementPowPreProcessing(this.base, window);
+    }
+
+    public Element getBase() {
+        return base;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes(base, window);
+    }
+
+    // 计算base^exp，结果为不可变元素
+    public Element powZn(Element exp) {
+        return table.powZn(exp).getImmutable();
+    }
+
+    // 估算窗口大小为k时一张表占用的内存：ceil(bits/k)行，每行2^k个元素，按元素的序列化长度计算（不含对象开销）
+    public static long sizeInBytes(Element base, int window) {
+        int bits = base.getField().getOrder().bitLength();
+        long rows = (bits + window - 1) / window;
+        return rows * (1L << window) * base.getLengthInBytes();
+    }
+
+    // 在内存预算内为一组底数选择统一的窗口大小，不超过maxWindow
+    // 预算连窗口为1的表都放不下时返回0，表示不使用预计算
+    public static int windowForBudget(Iterable<Element> bases, int maxWindow, long memoryBudgetBytes) {
+        for (int k = Math.min(maxWindow, MAX_WINDOW); k >= 1; k--) {
+            long total = 0;
+            for (Element base : bases) {
+                total += sizeInBytes(base, k);
+            }
+            if (total <= memoryBudgetBytes) {
+                return k;
+            }
+        }
+        return 0;
+    }
+}
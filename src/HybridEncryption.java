@@ -0,0 +1,452 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+// 混合加密（KEM/DEM）：ABE只加密一个随机的GT元素，由它经HKDF-SHA256导出AES-256密钥，
+// 实际数据按固定大小分块，用AES-GCM逐块加密，可以加密任意大小的数据且内存占用只与分块大小有关
+//
+// 文件格式（整数均为大端序）：
+//   magic       int    0x41424548 ("ABEH")
+//   version     byte   当前为1
+//   type        byte   ABE密文的类型，ABEBinaryFormat.Type.CP_CIPHERTEXT或KP_CIPHERTEXT
+//   reserved    short  保留，当前为0
+//   chunkSize   int    每个明文分块的字节数
+//   salt        byte[16]  HKDF的盐
+//   policyLen   int    CP-ABE访问策略（Policy.writeTo）的字节数，KP-ABE为0
+//   policy      byte[policyLen]  保留原有的节点编号，不能用策略字符串代替
+//   abeLen      int    ABE密文的字节数
+//   abe         byte[abeLen]  ABEBinaryFormat编码的ABE密文，G1元素为压缩形式
+//   数据：依次为各分块的AES-GCM密文，每块为chunkSize字节明文加16字节认证标签，最后一块可以更短（包括空明文）
+//
+// 第i块的nonce为 i（8字节）|| 0 0 0 || 是否最后一块（1字节），并以头部的SHA-256作为附加认证数据，
+// 因此分块不能被调换、截断或与其他文件的头部拼接。每个文件的密钥都是新生成的，nonce不需要随机
+// 除最后一块外每块密文长度相同，第i块在文件中的偏移量可以直接算出，支持随机访问解密（见ChunkReader）
+public final class HybridEncryption {
+    public static final int MAGIC = 0x41424548;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int TAG_BYTES = 16;
+    // 分块大小的上限，读取头部时用于拒绝伪造的chunkSize，保证解密的内存占用有界，chunkSize + TAG_BYTES也不会溢出
+    public static final int MAX_CHUNK_SIZE = 1 << 24;
+    // 头部中访问策略和ABE密文各自的字节数上限
+    public static final int MAX_FIELD_BYTES = 1 << 24;
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BYTES = 32;
+    private static final byte[] KDF_INFO = "ABE hybrid v1 AES-256-GCM".getBytes(StandardCharsets.US_ASCII);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private HybridEncryption() {
+    }
+
+    // 文件头部：分块参数和ABE密文
+    public static final class Header {
+        public final ABEBinaryFormat.Type type;
+        public final int chunkSize;
+        public final byte[] salt;
+        // CP-ABE访问策略，KP-ABE为null
+        public final Policy policy;
+        public final byte[] abeCiphertext;
+        // 头部编码后的字节，其长度即数据部分在文件中的起始位置
+        private final byte[] encoded;
+
+        Header(ABEBinaryFormat.Type type, int chunkSize, byte[] salt, Policy policy, byte[] abeCiphertext) {
+            if (type != ABEBinaryFormat.Type.CP_CIPHERTEXT && type != ABEBinaryFormat.Type.KP_CIPHERTEXT) {
+                throw new IllegalArgumentException("not a ciphertext type: " + type);
+            }
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("chunk size must be in 1.." + MAX_CHUNK_SIZE + ": " + chunkSize);
+            }
+            this.type = type;
+            this.chunkSize = chunkSize;
+            this.salt = salt;
+            this.policy = policy;
+            this.abeCiphertext = abeCiphertext;
+            this.encoded = encode();
+        }
+
+        private byte[] encode() {
+            try {
+                ByteArrayOutputStream policyBytes = new ByteArrayOutputStream();
+                if (policy != null) {
+                    policy.writeTo(new DataOutputStream(policyBytes));
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(type.code);
+                out.writeShort(0);
+                out.writeInt(chunkSize);
+                out.write(salt);
+                out.writeInt(policyBytes.size());
+                policyBytes.writeTo(out);
+                out.writeInt(abeCiphertext.length);
+                out.write(abeCiphertext);
+                out.flush();
+                return bytes.toByteArray();
+            }
+            catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        // 长度和分块大小在分配缓冲区前都与上限比较，损坏或伪造的头部只会得到IOException
+        public static Header read(InputStream is) throws IOException {
+            DataInputStream in = new DataInputStream(is);
+            int magic = in.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("not a hybrid ABE file, bad magic: " + Integer.toHexString(magic));
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported hybrid format version: " + version);
+            }
+            int typeCode = in.readUnsignedByte();
+            ABEBinaryFormat.Type type;
+            try {
+                type = ABEBinaryFormat.Type.fromCode(typeCode);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("invalid hybrid header: " + e.getMessage(), e);
+            }
+            in.readShort();
+            int chunkSize = in.readInt();
+            if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IOException("invalid chunk size in hybrid header: " + chunkSize);
+            }
+            byte[] salt = new byte[SALT_BYTES];
+            in.readFully(salt);
+            byte[] policyBytes = readBytes(in);
+            byte[] abe = readBytes(in);
+            Policy policy = policyBytes.length == 0 ? null
+                    : Policy.readFrom(new DataInputStream(new ByteArrayInputStream(policyBytes)));
+            try {
+                return new Header(type, chunkSize, salt, policy, abe);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("invalid hybrid header: " + e.getMessage(), e);
+            }
+        }
+
+        private static byte[] readBytes(DataInputStream in) throws IOException {
+            int len = in.readInt();
+            if (len < 0 || len > MAX_FIELD_BYTES) {
+                throw new IOException("invalid length in hybrid header: " + len);
+            }
+            byte[] bytes = new byte[len];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        public int length() {
+            return encoded.length;
+        }
+
+        public CPABECiphertext cpCiphertext(Pairing bp) throws IOException {
+            return ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(abeCiphertext), bp);
+        }
+
+        public KPABECiphertext kpCiphertext(Pairing bp) throws IOException {
+            return ABEBinaryFormat.readKPABECiphertext(new ByteArrayInputStream(abeCiphertext), bp);
+        }
+
+        private void write(OutputStream out) throws IOException {
+            out.write(encoded);
+        }
+
+        private byte[] digest() {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(encoded);
+            }
+            catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 加密
+
+    public static void encrypt(CPABEEngine engine, Policy policy, InputStream in, OutputStream out) throws IOException {
+        encrypt(engine, policy, in, out, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void encrypt(CPABEEngine engine, Policy policy, InputStream in, OutputStream out, int chunkSize)
+            throws IOException {
+        Element key = engine.getPairing().getGT().newRandomElement().getImmutable();
+        CPABECiphertext ct;
+        try {
+            ct = engine.encrypt(key, policy);
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteArrayOutputStream abe = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(ct, abe, true);
+        Header header = new Header(ABEBinaryFormat.Type.CP_CIPHERTEXT, chunkSize, randomSalt(), policy,
+                abe.toByteArray());
+        encryptChunks(header, key, in, out);
+    }
+
+    public static void encrypt(KPABEEngine engine, int[] messageAttList, InputStream in, OutputStream out)
+            throws IOException {
+        encrypt(engine, messageAttList, in, out, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void encrypt(KPABEEngine engine, int[] messageAttList, InputStream in, OutputStream out, int chunkSize)
+            throws IOException {
+        Element key = engine.getPairing().getGT().newRandomElement().getImmutable();
+        ByteArrayOutputStream abe = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(engine.encrypt(key, messageAttList), abe, true);
+        Header header = new Header(ABEBinaryFormat.Type.KP_CIPHERTEXT, chunkSize, randomSalt(), null, abe.toByteArray());
+        encryptChunks(header, key, in, out);
+    }
+
+    // 两个缓冲区交替使用：读满一块后再预读下一块，下一块为空时当前块才是最后一块
+    private static void encryptChunks(Header header, Element key, InputStream in, OutputStream out) throws IOException {
+        SecretKeySpec aesKey = deriveKey(key, header.salt);
+        byte[] aad = header.digest();
+        header.write(out);
+        int chunkSize = header.chunkSize;
+        byte[] current = new byte[chunkSize];
+        byte[] next = new byte[chunkSize];
+        byte[] cipherBuf = new byte[chunkSize + TAG_BYTES];
+        int n = in.readNBytes(current, 0, chunkSize);
+        long index = 0;
+        while (true) {
+            int m = n == chunkSize ? in.readNBytes(next, 0, chunkSize) : 0;
+            boolean last = m == 0;
+            int len = crypt(Cipher.ENCRYPT_MODE, aesKey, aad, index, last, current, n, cipherBuf);
+            out.write(cipherBuf, 0, len);
+            if (last) {
+                break;
+            }
+            byte[] t = current;
+            current = next;
+            next = t;
+            n = m;
+            index++;
+        }
+        out.flush();
+    }
+
+    // ---------------------------------------------------------------- 顺序解密
+
+    // 访问策略不被私钥满足时返回false，不写出任何数据；数据被篡改或截断时抛出IOException，
+    // 此时已经写出的分块都是通过认证的
+    public static boolean decrypt(CPABEEngine engine, CPABEDecryptionKey dk, InputStream in, OutputStream out)
+            throws IOException {
+        Header header = Header.read(in);
+        SecretKeySpec key = unwrap(header, engine, dk);
+        if (key == null) {
+            return false;
+        }
+        decryptChunks(header, key, in, out);
+        return true;
+    }
+
+    public static boolean decrypt(KPABEEngine engine, Policy keyPolicy, KPABESecretKey sk, InputStream in,
+                                  OutputStream out) throws IOException {
+        Header header = Header.read(in);
+        SecretKeySpec key = unwrap(header, engine, keyPolicy, sk);
+        if (key == null) {
+            return false;
+        }
+        decryptChunks(header, key, in, out);
+        return true;
+    }
+
+    private static void decryptChunks(Header header, SecretKeySpec key, InputStream in, OutputStream out)
+            throws IOException {
+        byte[] aad = header.digest();
+        int cipherChunk = header.chunkSize + TAG_BYTES;
+        byte[] current = new byte[cipherChunk];
+        byte[] next = new byte[cipherChunk];
+        byte[] plainBuf = new byte[header.chunkSize];
+        int n = in.readNBytes(current, 0, cipherChunk);
+        long index = 0;
+        while (true) {
+            if (n < TAG_BYTES) {
+                throw new EOFException("hybrid ciphertext truncated at chunk " + index);
+            }
+            int m = n == cipherChunk ? in.readNBytes(next, 0, cipherChunk) : 0;
+            boolean last = m == 0;
+            int len = crypt(Cipher.DECRYPT_MODE, key, aad, index, last, current, n, plainBuf);
+            out.write(plainBuf, 0, len);
+            if (last) {
+                break;
+            }
+            byte[] t = current;
+            current = next;
+            next = t;
+            n = m;
+            index++;
+        }
+        out.flush();
+    }
+
+    // ---------------------------------------------------------------- 随机访问解密
+
+    // 访问策略不被私钥满足时返回null
+    public static ChunkReader open(FileChannel channel, CPABEEngine engine, CPABEDecryptionKey dk) throws IOException {
+        Header header = Header.read(Channels.newInputStream(channel.position(0)));
+        SecretKeySpec key = unwrap(header, engine, dk);
+        return key == null ? null : new ChunkReader(channel, header, key);
+    }
+
+    public static ChunkReader open(FileChannel channel, KPABEEngine engine, Policy keyPolicy, KPABESecretKey sk)
+            throws IOException {
+        Header header = Header.read(Channels.newInputStream(channel.position(0)));
+        SecretKeySpec key = unwrap(header, engine, keyPolicy, sk);
+        return key == null ? null : new ChunkReader(channel, header, key);
+    }
+
+    // 按块号读取并解密任意分块，不需要先解密前面的分块；使用FileChannel的定位读取，可以被多个线程同时使用
+    // channel由调用方管理
+    public static final class ChunkReader {
+        private final FileChannel channel;
+        private final Header header;
+        private final SecretKeySpec key;
+        private final byte[] aad;
+        private final long chunkCount;
+        private final int lastCipherLength;
+
+        ChunkReader(FileChannel channel, Header header, SecretKeySpec key) throws IOException {
+            this.channel = channel;
+            this.header = header;
+            this.key = key;
+            this.aad = header.digest();
+            long dataLength = channel.size() - header.length();
+            long cipherChunk = header.chunkSize + TAG_BYTES;
+            if (dataLength < TAG_BYTES) {
+                throw new EOFException("hybrid ciphertext has no data chunks");
+            }
+            long count = (dataLength + cipherChunk - 1) / cipherChunk;
+            int lastLength = (int) (dataLength - (count - 1) * cipherChunk);
+            if (lastLength < TAG_BYTES) {
+                throw new EOFException("hybrid ciphertext truncated in the last chunk");
+            }
+            this.chunkCount = count;
+            this.lastCipherLength = lastLength;
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        public int getChunkSize() {
+            return header.chunkSize;
+        }
+
+        public long chunkCount() {
+            return chunkCount;
+        }
+
+        public long plaintextLength() {
+            return (chunkCount - 1) * header.chunkSize + lastCipherLength - TAG_BYTES;
+        }
+
+        // 数据被篡改、文件被截断或分块被调换时抛出IOException
+        public byte[] readChunk(long index) throws IOException {
+            if (index < 0 || index >= chunkCount) {
+                throw new IndexOutOfBoundsException("chunk " + index + " of " + chunkCount);
+            }
+            boolean last = index == chunkCount - 1;
+            int len = last ? lastCipherLength : header.chunkSize + TAG_BYTES;
+            long position = header.length() + index * (header.chunkSize + TAG_BYTES);
+            ByteBuffer buf = ByteBuffer.allocate(len);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, position + buf.position()) < 0) {
+                    throw new EOFException("hybrid ciphertext truncated at chunk " + index);
+                }
+            }
+            byte[] plain = new byte[len - TAG_BYTES];
+            crypt(Cipher.DECRYPT_MODE, key, aad, index, last, buf.array(), len, plain);
+            return plain;
+        }
+    }
+
+    // ---------------------------------------------------------------- KEM
+
+    // 解封装ABE密文中的GT元素并导出AES密钥，访问策略不满足时返回null
+    private static SecretKeySpec unwrap(Header header, CPABEEngine engine, CPABEDecryptionKey dk) throws IOException {
+        if (header.type != ABEBinaryFormat.Type.CP_CIPHERTEXT || header.policy == null) {
+            throw new IOException("not a CP-ABE hybrid file: " + header.type);
+        }
+        Element key = engine.decrypt(header.policy, header.cpCiphertext(engine.getPairing()), dk, DecryptMode.FLATTENED);
+        return key == null ? null : deriveKey(key, header.salt);
+    }
+
+    private static SecretKeySpec unwrap(Header header, KPABEEngine engine, Policy keyPolicy, KPABESecretKey sk)
+            throws IOException {
+        if (header.type != ABEBinaryFormat.Type.KP_CIPHERTEXT) {
+            throw new IOException("not a KP-ABE hybrid file: " + header.type);
+        }
+        Element key = engine.decrypt(keyPolicy, header.kpCiphertext(engine.getPairing()), sk, DecryptMode.FLATTENED);
+        return key == null ? null : deriveKey(key, header.salt);
+    }
+
+    // HKDF-SHA256（RFC 5869），输入密钥材料为GT元素的字节，只需要一个输出块
+    static SecretKeySpec deriveKey(Element key, byte[] salt) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(salt, "HmacSHA256"));
+            byte[] prk = mac.doFinal(key.toBytes());
+            mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+            mac.update(KDF_INFO);
+            mac.update((byte) 1);
+            byte[] okm = mac.doFinal();
+            return new SecretKeySpec(okm, 0, KEY_BYTES, "AES");
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------- DEM
+
+    // 加密或解密一个分块，返回写入out的字节数，认证失败时抛出IOException
+    private static int crypt(int mode, SecretKeySpec key, byte[] aad, long index, boolean last, byte[] in, int len,
+                             byte[] out) throws IOException {
+        byte[] nonce = new byte[12];
+        ByteBuffer.wrap(nonce).putLong(index);
+        nonce[11] = (byte) (last ? 1 : 0);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(in, 0, len, out, 0);
+        }
+        catch (AEADBadTagException e) {
+            throw new IOException("chunk " + index + " failed authentication", e);
+        }
+        catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] randomSalt() {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return salt;
+    }
+}
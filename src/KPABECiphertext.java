@@ -0,0 +1,43 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// KP-ABE密文 EP=M e(g,g)^(ys)，每个密文属性对应的 E<att>=T^s，以及密文属性列表
+public class KPABECiphertext {
+    public final int[] messageAttList;
+    public final Element EP;
+    public final Map<Integer, Element> E;
+
+    public KPABECiphertext(int[] messageAttList, Element EP, Map<Integer, Element> E) {
+        this.messageAttList = messageAttList.clone();
+        this.EP = EP.getImmutable();
+        this.E = Collections.unmodifiableMap(new LinkedHashMap<>(E));
+    }
+
+    public Properties toProperties() {
+        Properties ctProp = new Properties();
+        for (Map.Entry<Integer, Element> entry : E.entrySet()) {
+            ctProp.setProperty("E"+entry.getKey(), ABEUtils.toBase64(entry.getValue()));
+        }
+        ctProp.setProperty("EP", ABEUtils.toBase64(EP));
+        //密文属性列表也添加至密文中
+        ctProp.setProperty("messageAttList", Arrays.toString(messageAttList));
+        return ctProp;
+    }
+
+    public static KPABECiphertext fromProperties(Properties ctProp, Pairing bp) {
+        //恢复明文消息的属性列表 int[]类型
+        int[] messageAttList = ABEUtils.parseIntArray(ctProp.getProperty("messageAttList"));
+        Element EP = ABEUtils.fromBase64(bp.getGT(), ctProp.getProperty("EP"));
+        Map<Integer, Element> E = new LinkedHashMap<>();
+        for (int att : messageAttList) {
+            E.put(att, ABEUtils.fromBase64(bp.getG1(), ctProp.getProperty("E"+att)));
+        }
+        return new KPABECiphertext(messageAttList, EP, E);
+    }
+}
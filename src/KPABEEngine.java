@@ -0,0 +1,370 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+// 长期存活的KP-ABE引擎：配对参数和公钥只在构造时加载、解码一次，之后所有的keygen/encrypt/decrypt都在内存中完成
+// 引擎中保存的群元素全部为不可变元素，同一个引擎可以被反复使用
+public class KPABEEngine {
+    private final Pairing bp;
+    private final KPABEPublicKey pk;
+    // 只有属性授权中心持有主密钥，普通的加密方/解密方为null
+    private final KPABEMasterKey msk;
+    // 公钥中固定底数g, egg_y以及每个T<i>的预计算表，未启用时为null/空
+    private final FixedBaseTable gTable;
+    private final FixedBaseTable egg_yTable;
+    private final Map<Integer, FixedBaseTable> TTables;
+    // withFixedBaseTables给出的内存预算，属性全集变大时所有表的总大小仍不超过这一预算
+    private final long tableBudget;
+    private final ProductPairing productPairing;
+    // 按叶子（属性）并行计算encrypt和keygen时使用的线程池，为null时串行计算
+    private final ExecutorService leafExecutor;
+    // 解密时各个门的拉格朗日因子缓存，可以在使用相同配对参数的多个引擎之间共享
+    private final LagrangeCache lagrangeCache;
+    // 字符串属性到整数属性编号的字典
+    private final AttributeDictionary dictionary;
+
+    public KPABEEngine(Pairing bp, KPABEPublicKey pk) {
+        this(bp, pk, null);
+    }
+
+    public KPABEEngine(Pairing bp, KPABEPublicKey pk, KPABEMasterKey msk) {
+        this(bp, pk, msk, null, null, new HashMap<>(), 0, null, new LagrangeCache(bp), new AttributeDictionary());
+    }
+
+    private KPABEEngine(Pairing bp, KPABEPublicKey pk, KPABEMasterKey msk, FixedBaseTable gTable,
+                        FixedBaseTable egg_yTable, Map<Integer, FixedBaseTable> TTables, long tableBudget,
+                        ExecutorService leafExecutor, LagrangeCache lagrangeCache, AttributeDictionary dictionary) {
+        this.bp = bp;
+        this.pk = pk;
+        this.msk = msk;
+        this.gTable = gTable;
+        this.egg_yTable = egg_yTable;
+        this.TTables = TTables;
+        this.tableBudget = tableBudget;
+        this.productPairing = new ProductPairing(bp);
+        this.leafExecutor = leafExecutor;
+        this.lagrangeCache = lagrangeCache;
+        this.dictionary = dictionary;
+    }
+
+    // 返回一个为公钥底数建立了固定底数预计算表的新引擎，之后的encrypt和keygen都复用这些表
+    // window为期望的窗口大小，当所有表的总大小超出memoryBudgetBytes时自动缩小窗口，预算不足时不建表
+    public KPABEEngine withFixedBaseTables(int window, long memoryBudgetBytes) {
+        return withTables(pk, msk, window, memoryBudgetBytes);
+    }
+
+    // 为pk中的全部底数按预算建表，返回使用pk、msk和这些表的新引擎
+    private KPABEEngine withTables(KPABEPublicKey pk, KPABEMasterKey msk, int window, long memoryBudgetBytes) {
+        int k = FixedBaseTable.windowForBudget(bases(pk), window, memoryBudgetBytes);
+        if (k == 0) {
+            return new KPABEEngine(bp, pk, msk, null, null, new HashMap<>(), memoryBudgetBytes, leafExecutor,
+                    lagrangeCache, dictionary);
+        }
+        Map<Integer, FixedBaseTable> TTables = new HashMap<>();
+        for (Map.Entry<Integer, Element> entry : pk.T.entrySet()) {
+            TTables.put(entry.getKey(), new FixedBaseTable(entry.getValue(), k));
+        }
+        return new KPABEEngine(bp, pk, msk, new FixedBaseTable(pk.g, k), new FixedBaseTable(pk.egg_y, k), TTables,
+                memoryBudgetBytes, leafExecutor, lagrangeCache, dictionary);
+    }
+
+    private static List<Element> bases(KPABEPublicKey pk) {
+        List<Element> bases = new ArrayList<>(pk.T.values());
+        bases.add(pk.g);
+        bases.add(pk.egg_y);
+        return bases;
+    }
+
+    // 返回一个在executor上按叶子并行计算encrypt和keygen的新引擎，executor由调用方管理，为null时恢复串行计算
+    // 输出的密文和私钥组件顺序与串行计算相同
+    public KPABEEngine withLeafExecutor(ExecutorService executor) {
+        return new KPABEEngine(bp, pk, msk, gTable, egg_yTable, TTables, tableBudget, executor, lagrangeCache, dictionary);
+    }
+
+    // 返回一个使用给定拉格朗日因子缓存的新引擎，cache必须基于同一组配对参数
+    public KPABEEngine withLagrangeCache(LagrangeCache cache) {
+        if (cache.getPairing() != bp) {
+            throw new IllegalArgumentException("lagrange cache was built for a different pairing");
+        }
+        return new KPABEEngine(bp, pk, msk, gTable, egg_yTable, TTables, tableBudget, leafExecutor, cache, dictionary);
+    }
+
+    // 返回一个使用给定字符串属性字典的新引擎
+    public KPABEEngine withDictionary(AttributeDictionary dictionary) {
+        return new KPABEEngine(bp, pk, msk, gTable, egg_yTable, TTables, tableBudget, leafExecutor, lagrangeCache, dictionary);
+    }
+
+    // 返回一个属性全集中加入了atts的新引擎（只有属性授权中心可以调用），已存在的属性保持不变
+    // 公钥和主密钥只包含实际登记过的属性，大小随使用的属性个数增长，而不是随属性编号的上限增长
+    // 每次调用都会复制一次属性全集，需要登记多个属性时应在一次调用中传入，没有新属性时直接返回当前引擎
+    public KPABEEngine withAttributes(int... atts) {
+        if (msk == null) {
+            throw new IllegalStateException("adding attributes requires an engine holding the master key");
+        }
+        int[] added = Arrays.stream(atts).filter(att -> !msk.t.containsKey(att)).distinct().toArray();
+        if (added.length == 0) {
+            return this;
+        }
+        //对每个新属性i，选取一个随机数ti作为该属性对应的主密钥，并计算相应公钥g^ti，各属性相互独立，可以并行计算
+        Element[] ts = new Element[added.length];
+        for (int i = 0; i < added.length; i++) {
+            ts[i] = bp.getZr().newRandomElement().getImmutable();
+        }
+        List<Element> Ts = ParallelLeaves.map(leafExecutor, added.length, i -> pow(pk.g, gTable, ts[i]));
+        Map<Integer, Element> t = new TreeMap<>(msk.t);
+        Map<Integer, Element> T = new TreeMap<>(pk.T);
+        for (int i = 0; i < added.length; i++) {
+            t.put(added[i], ts[i]);
+            T.put(added[i], Ts.get(i));
+        }
+        KPABEPublicKey newPk = new KPABEPublicKey(pk.g, pk.egg_y, T);
+        KPABEMasterKey newMsk = new KPABEMasterKey(msk.y, t);
+        if (gTable == null) {
+            return new KPABEEngine(bp, newPk, newMsk, null, null, TTables, tableBudget, leafExecutor, lagrangeCache,
+                    dictionary);
+        }
+
+        // 加入新属性后所有表的总大小仍要在预算之内：窗口不变时只为新属性建表，否则按缩小后的窗口重建全部的表
+        int k = FixedBaseTable.windowForBudget(bases(newPk), gTable.getWindow(), tableBudget);
+        if (k != gTable.getWindow()) {
+            return withTables(newPk, newMsk, k, tableBudget);
+        }
+        List<FixedBaseTable> tables = ParallelLeaves.map(leafExecutor, added.length,
+                i -> new FixedBaseTable(Ts.get(i), k));
+        Map<Integer, FixedBaseTable> newTTables = new HashMap<>(TTables);
+        for (int i = 0; i < added.length; i++) {
+            newTTables.put(added[i], tables.get(i));
+        }
+        return new KPABEEngine(bp, newPk, newMsk, gTable, egg_yTable, newTTables, tableBudget, leafExecutor,
+                lagrangeCache, dictionary);
+    }
+
+    public KPABEEngine withAttributes(String... atts) {
+        return withAttributes(dictionary.resolve(atts));
+    }
+
+    // 使用公共的ForkJoinPool按叶子并行计算
+    public KPABEEngine withParallelLeaves() {
+        return withLeafExecutor(ForkJoinPool.commonPool());
+    }
+
+    // 文件读取失败时抛出UncheckedIOException
+    public static KPABEEngine load(String pairingParametersFileName, String pkFileName) {
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
+        KPABEPublicKey pk = KPABEPublicKey.fromProperties(ABEUtils.loadPropertiesUnchecked(pkFileName), bp);
+        return new KPABEEngine(bp, pk);
+    }
+
+    public static KPABEEngine load(String pairingParametersFileName, String pkFileName, String mskFileName) {
+        Pairing bp = ABEUtils.getPairing(pairingParametersFileName);
+        KPABEPublicKey pk = KPABEPublicKey.fromProperties(ABEUtils.loadPropertiesUnchecked(pkFileName), bp);
+        KPABEMasterKey msk = KPABEMasterKey.fromProperties(ABEUtils.loadPropertiesUnchecked(mskFileName), bp);
+        return new KPABEEngine(bp, pk, msk);
+    }
+
+    // 生成属性全集为1，2，3，...，U的系统公钥和主密钥，返回持有主密钥的引擎
+    public static KPABEEngine setup(Pairing bp, int U) {
+        int[] atts = new int[U];
+        for (int i = 1; i <= U; i++){
+            atts[i - 1] = i;
+        }
+        return setup(bp).withAttributes(atts);
+    }
+
+    // 生成属性全集为空的系统公钥和主密钥，之后用withAttributes按需登记属性
+    public static KPABEEngine setup(Pairing bp) {
+        Element g = bp.getG1().newRandomElement().getImmutable();
+        //选取一个随机数y，计算e(g,g)^y
+        Element y = bp.getZr().newRandomElement().getImmutable();
+        Element egg_y = bp.pairing(g, g).powZn(y).getImmutable();
+
+        return new KPABEEngine(bp, new KPABEPublicKey(g, egg_y, new TreeMap<>()), new KPABEMasterKey(y, new TreeMap<>()));
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    public KPABEPublicKey getPublicKey() {
+        return pk;
+    }
+
+    public KPABEMasterKey getMasterKey() {
+        return msk;
+    }
+
+    public AttributeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public LagrangeCache getLagrangeCache() {
+        return lagrangeCache;
+    }
+
+    // 预计算表的窗口大小，0表示未启用预计算
+    public int getFixedBaseWindow() {
+        return gTable == null ? 0 : gTable.getWindow();
+    }
+
+    // 指数通常是秘密值（alpha, r, s, t等），不使用CurvePow，见CurvePow的说明
+    private static Element pow(Element base, FixedBaseTable table, Element exp) {
+        return table != null ? table.powZn(exp) : base.powZn(exp).getImmutable();
+    }
+
+    public KPABESecretKey keygen(Node[] accessTree) {
+        return keygen(Policy.of(accessTree));
+    }
+
+    public KPABESecretKey keygen(Policy policy) {
+        if (msk == null) {
+            throw new IllegalStateException("keygen requires an engine holding the master key");
+        }
+        List<Element> Ds;
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            //进行共享，使得每个叶子节点获得响应的秘密分片，分片写入本次操作的PolicyScratch而不修改访问树
+            Element[] shares = scratch.share;
+            AccessTree.nodeShares(policy, msk.y, shares, bp);
+
+            //计算每个属性对应的私钥g^(q/t)，q是多项式在该属性位置的值，t是属性对应的主密钥
+            //每个叶子的私钥组件相互独立，可以并行计算
+            Ds = ParallelLeaves.map(leafExecutor, policy.leafCount(), j -> {
+                int leaf = policy.leaf(j);
+                Element t = msk.t.get(policy.att(leaf));
+                if (t == null) {
+                    throw new IllegalArgumentException("attribute " + policy.att(leaf) + " is not in the attribute universe");
+                }
+                Element q = shares[leaf];
+                return pow(pk.g, gTable, q.div(t));
+            });
+        }
+        Map<Integer, Element> D = new LinkedHashMap<>();
+        for (int j = 0; j < policy.leafCount(); j++) {
+            D.put(policy.att(policy.leaf(j)), Ds.get(j));
+        }
+        return new KPABESecretKey(D);
+    }
+
+    public KPABECiphertext encrypt(Element message, String[] messageAtts) {
+        return encrypt(message, dictionary.resolve(messageAtts));
+    }
+
+    public KPABECiphertext encrypt(Element message, int[] messageAttList) {
+        for (int att : messageAttList) {
+            if (!pk.T.containsKey(att)) {
+                throw new IllegalArgumentException("attribute " + att + " is not in the public key");
+            }
+        }
+        //计算密文组件 EP=Me(g,g)^(ys)
+        Element s = bp.getZr().newRandomElement().getImmutable();
+        Element EP = message.duplicate().mul(pow(pk.egg_y, egg_yTable, s)).getImmutable();
+
+        //针对每个密文属性，计算密文组件 E=T^s
+        List<Element> Es = ParallelLeaves.map(leafExecutor, messageAttList.length,
+                i -> pow(pk.T.get(messageAttList[i]), TTables.get(messageAttList[i]), s));
+        Map<Integer, Element> E = new LinkedHashMap<>();
+        for (int i = 0; i < messageAttList.length; i++) {
+            E.put(messageAttList[i], Es.get(i));
+        }
+        return new KPABECiphertext(messageAttList, EP, E);
+    }
+
+    // 访问树不满足时返回null
+    public Element decrypt(Node[] accessTree, KPABECiphertext ct, KPABESecretKey sk) {
+        return decrypt(Policy.of(accessTree), ct, sk, DecryptMode.RECURSIVE);
+    }
+
+    public Element decrypt(Node[] accessTree, KPABECiphertext ct, KPABESecretKey sk, DecryptMode mode) {
+        return decrypt(Policy.of(accessTree), ct, sk, mode);
+    }
+
+    public Element decrypt(Policy policy, KPABECiphertext ct, KPABESecretKey sk) {
+        return decrypt(policy, ct, sk, DecryptMode.RECURSIVE);
+    }
+
+    // 恢复过程的状态保存在本次操作的PolicyScratch中，不修改policy，同一个Policy可以被多个线程同时用于解密
+    public Element decrypt(Policy policy, KPABECiphertext ct, KPABESecretKey sk, DecryptMode mode) {
+        if (mode != DecryptMode.RECURSIVE) {
+            return decryptFlattened(policy, ct, sk, mode == DecryptMode.PRODUCT_PAIRING);
+        }
+        try (PolicyScratch scratch = PolicyScratch.acquire(policy.size())) {
+            // 如果叶子节点的属性值属于密文属性列表，则将属性对应的密文组件和秘钥组件配对的结果作为秘密值
+            boolean treeOK = AccessTree.recover(policy, 0, AttributeSet.of(ct.messageAttList), i -> {
+                int att = policy.att(i);
+                return bp.pairing(ct.E.get(att), sk.D.get(att)).getImmutable();
+            }, scratch, lagrangeCache, bp);
+            if (!treeOK) {
+                return null;
+            }
+            //恢复M=EP除以上述连乘结果
+            return ct.EP.div(scratch.share[0]);
+        }
+    }
+
+    // 解密密文库中的一条密文：先只用条目头部中的密文属性列表判断keyPolicy是否满足，不满足时直接返回null，
+    // 不解码任何群元素、不做配对；满足时只解码选中的叶子对应的E。RECURSIVE按FLATTENED处理
+    public Element decrypt(Policy keyPolicy, CiphertextStore.Entry entry, KPABESecretKey sk, DecryptMode mode)
+            throws IOException {
+        Map<Integer, Element> coefs = AccessTree.leafCoefficients(keyPolicy, AttributeSet.of(entry.attributes()),
+                lagrangeCache, bp);
+        if (coefs == null) {
+            return null;
+        }
+        int[] atts = coefs.keySet().stream().mapToInt(keyPolicy::att).distinct().toArray();
+        return decryptFlattened(keyPolicy, coefs, entry.decodeKP(bp, atts), sk, mode == DecryptMode.PRODUCT_PAIRING);
+    }
+
+    public Element decrypt(Policy keyPolicy, CiphertextStore.Entry entry, KPABESecretKey sk) throws IOException {
+        return decrypt(keyPolicy, entry, sk, DecryptMode.FLATTENED);
+    }
+
+    // e(g,g)^(ys) = prod(e(E,D)^delta)，delta为叶子节点的组合系数
+    // product为false时每个选中的叶子计算一次配对和一次GT上的指数运算；
+    // product为true时把delta作为G1上的指数作用在D上，e(E,D)^delta = e(E,D^delta)，再合并为一次配对连乘
+    private Element decryptFlattened(Policy policy, KPABECiphertext ct, KPABESecretKey sk, boolean product) {
+        Map<Integer, Element> coefs = AccessTree.leafCoefficients(policy, AttributeSet.of(ct.messageAttList), lagrangeCache, bp);
+        if (coefs == null) {
+            return null;
+        }
+        return decryptFlattened(policy, coefs, ct, sk, product);
+    }
+
+    private Element decryptFlattened(Policy policy, Map<Integer, Element> coefs, KPABECiphertext ct, KPABESecretKey sk,
+                                     boolean product) {
+        Element egg_ys;
+        if (product) {
+            Element[] in1 = new Element[coefs.size()];
+            Element[] in2 = new Element[coefs.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Element> entry : coefs.entrySet()) {
+                int att = policy.att(entry.getKey());
+                Element delta = entry.getValue();
+                in1[i] = ct.E.get(att);
+                // delta是公开的拉格朗日因子，可以使用CurvePow
+                in2[i] = delta.isOne() ? sk.D.get(att) : CurvePow.powZn(sk.D.get(att), delta);
+                i++;
+            }
+            egg_ys = productPairing.pairing(in1, in2);
+        }
+        else {
+            egg_ys = bp.getGT().newOneElement();
+            for (Map.Entry<Integer, Element> entry : coefs.entrySet()) {
+                int att = policy.att(entry.getKey());
+                Element share = bp.pairing(ct.E.get(att), sk.D.get(att));
+                Element delta = entry.getValue();
+                egg_ys.mul(delta.isOne() ? share : share.powZn(delta));
+            }
+        }
+        //恢复M=EP除以上述连乘结果
+        return ct.EP.div(egg_ys);
+    }
+}
@@ -0,0 +1,38 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+// KP-ABE主密钥 y 以及每个属性对应的 t<i>
+public class KPABEMasterKey {
+    public final Element y;
+    public final Map<Integer, Element> t;
+
+    public KPABEMasterKey(Element y, Map<Integer, Element> t) {
+        this.y = y.getImmutable();
+        this.t = Collections.unmodifiableMap(new TreeMap<>(t));
+    }
+
+    public Properties toProperties() {
+        Properties mskProp = new Properties();
+        for (Map.Entry<Integer, Element> entry : t.entrySet()) {
+            mskProp.setProperty("t"+entry.getKey(), ABEUtils.toBase64(entry.getValue()));
+        }
+        mskProp.setProperty("y", ABEUtils.toBase64(y));
+        return mskProp;
+    }
+
+    public static KPABEMasterKey fromProperties(Properties mskProp, Pairing bp) {
+        Element y = ABEUtils.fromBase64(bp.getZr(), mskProp.getProperty("y"));
+        Map<Integer, Element> t = new TreeMap<>();
+        for (String name : mskProp.stringPropertyNames()) {
+            if (name.startsWith("t")) {
+                t.put(Integer.parseInt(name.substring(1)), ABEUtils.fromBase64(bp.getZr(), mskProp.getProperty(name)));
+            }
+        }
+        return new KPABEMasterKey(y, t);
+    }
+}
@@ -0,0 +1,42 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+// KP-ABE公钥 g, e(g,g)^y 以及每个属性对应的 T<i>=g^ti
+public class KPABEPublicKey {
+    public final Element g;
+    public final Element egg_y;
+    public final Map<Integer, Element> T;
+
+    public KPABEPublicKey(Element g, Element egg_y, Map<Integer, Element> T) {
+        this.g = g.getImmutable();
+        this.egg_y = egg_y.getImmutable();
+        this.T = Collections.unmodifiableMap(new TreeMap<>(T));
+    }
+
+    public Properties toProperties() {
+        Properties pkProp = new Properties();
+        for (Map.Entry<Integer, Element> entry : T.entrySet()) {
+            pkProp.setProperty("T"+entry.getKey(), ABEUtils.toBase64(entry.getValue()));
+        }
+        pkProp.setProperty("egg_y", ABEUtils.toBase64(egg_y));
+        pkProp.setProperty("g", ABEUtils.toBase64(g));
+        return pkProp;
+    }
+
+    public static KPABEPublicKey fromProperties(Properties pkProp, Pairing bp) {
+        Element g = ABEUtils.fromBase64(bp.getG1(), pkProp.getProperty("g"));
+        Element egg_y = ABEUtils.fromBase64(bp.getGT(), pkProp.getProperty("egg_y"));
+        Map<Integer, Element> T = new TreeMap<>();
+        for (String name : pkProp.stringPropertyNames()) {
+            if (name.startsWith("T")) {
+                T.put(Integer.parseInt(name.substring(1)), ABEUtils.fromBase64(bp.getG1(), pkProp.getProperty(name)));
+            }
+        }
+        return new KPABEPublicKey(g, egg_y, T);
+    }
+}
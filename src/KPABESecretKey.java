@@ -0,0 +1,35 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+// KP-ABE用户私钥，访问树每个叶子节点属性对应的 D<att>
+// 访问树本身不在私钥中，解密时由调用方提供
+public class KPABESecretKey {
+    public final Map<Integer, Element> D;
+
+    public KPABESecretKey(Map<Integer, Element> D) {
+        this.D = Collections.unmodifiableMap(new LinkedHashMap<>(D));
+    }
+
+    public Properties toProperties() {
+        Properties skProp = new Properties();
+        for (Map.Entry<Integer, Element> entry : D.entrySet()) {
+            skProp.setProperty("D"+entry.getKey(), ABEUtils.toBase64(entry.getValue()));
+        }
+        return skProp;
+    }
+
+    public static KPABESecretKey fromProperties(Properties skProp, Pairing bp) {
+        Map<Integer, Element> D = new LinkedHashMap<>();
+        for (String name : skProp.stringPropertyNames()) {
+            if (name.startsWith("D")) {
+                D.put(Integer.parseInt(name.substring(1)), ABEUtils.fromBase64(bp.getG1(), skProp.getProperty(name)));
+            }
+        }
+        return new KPABESecretKey(D);
+    }
+}
@@ -0,0 +1,128 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// (子节点索引集合, 目标点x) -> 拉格朗日因子向量 的有界缓存，按LRU淘汰，可被多个线程共享
+// 同一个策略的每次解密通常选中相同的子节点集合，命中时解密过程中不再需要任何求逆
+// 键为排序后的索引集合，因此顺序不同的同一集合共用一条缓存
+public class LagrangeCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Pairing bp;
+    private final int capacity;
+    // accessOrder为true的LinkedHashMap即LRU，所有访问都在synchronized(entries)中进行
+    private final LinkedHashMap<Key, Element[]> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LagrangeCache(Pairing bp) {
+        this(bp, DEFAULT_CAPACITY);
+    }
+
+    public LagrangeCache(Pairing bp, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.bp = bp;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, Element[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Element[]> eldest) {
+                return size() > LagrangeCache.this.capacity;
+            }
+        };
+    }
+
+    // 返回集合S中每个元素在x处的拉格朗日因子，res[t]对应S[t]；返回的数组不可修改
+    public Element[] get(int[] S, int x) {
+        int[] sorted = S.clone();
+        Arrays.sort(sorted);
+        Key key = new Key(sorted, x);
+        Element[] coefs;
+        synchronized (entries) {
+            coefs = entries.get(key);
+        }
+        if (coefs != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+            // 计算放在锁外，两个线程同时未命中同一集合时会各算一次，结果相同
+            coefs = AccessTree.lagrangeCoefficients(sorted, x, bp);
+            synchronized (entries) {
+                entries.put(key, coefs);
+            }
+        }
+        if (Arrays.equals(sorted, S)) {
+            return coefs;
+        }
+        Element[] res = new Element[S.length];
+        for (int t = 0; t < S.length; t++) {
+            res[t] = coefs[Arrays.binarySearch(sorted, S[t])];
+        }
+        return res;
+    }
+
+    public Pairing getPairing() {
+        return bp;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LagrangeCache{size=" + size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+
+    private static final class Key {
+        private final int[] S;
+        private final int x;
+        private final int hash;
+
+        Key(int[] S, int x) {
+            this.S = S;
+            this.x = x;
+            this.hash = 31 * Arrays.hashCode(S) + x;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return x == other.x && Arrays.equals(S, other.S);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class Node {
     // 如果是内部节点，此字段null
     public int att;
     // 对应的秘密值
+    // 只有AccessTree/CPABE/KPABE中直接操作Node[]的nodeShare和nodeRecover会写入secretShare和valid；
+    // 引擎把Node[]转换为不可变的Policy，状态保存在每次操作的PolicyScratch中，不会修改这两个字段
     public Element secretShare;
 
     // 用于秘密恢复，表示此节点是否可以恢复
@@ -0,0 +1,46 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+// 按叶子（或属性）并行计算，结果按下标顺序返回，保证输出与串行计算的顺序一致
+// 每个任务只读取不可变的群元素并返回新的元素，不共享可变的JPBC Element
+// 使用ForkJoinPool时，在池内线程中再次提交的任务会被等待方“帮忙”执行，不会因嵌套提交而死锁；
+// 使用固定大小的线程池时，不要在同一个池的任务中嵌套调用
+public class ParallelLeaves {
+
+    // executor为null或count不超过1时在当前线程中依次计算
+    public static <T> List<T> map(ExecutorService executor, int count, IntFunction<T> task) {
+        List<T> results = new ArrayList<>(count);
+        if (executor == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                results.add(task.apply(i));
+            }
+            return results;
+        }
+        List<Callable<T>> callables = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            callables.add(() -> task.apply(index));
+        }
+        try {
+            for (Future<T> future : executor.invokeAll(callables)) {
+                results.add(future.get());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for leaf computations", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+}
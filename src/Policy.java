@@ -0,0 +1,519 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+// 由策略字符串编译得到的不可变访问树，使用基本类型数组扁平存储
+// 节点按层序编号，0为根节点；内部节点i的子节点为 children[childStart[i]] ... children[childStart[i+1]-1]
+// 与Node[]的约定相同，节点编号同时作为秘密共享时子节点的横坐标
+// Policy只描述访问树的结构，加密/解密过程中的秘密分片等状态保存在每次操作各自的PolicyScratch中，
+// 因此同一个Policy可以被多个线程同时使用
+//
+// 策略语法（关键字不区分大小写）：
+//   expr   := and ('OR' and)*
+//   and    := factor ('AND' factor)*
+//   factor := '(' expr ')' | k 'of' '(' expr (',' expr)* ')' | 属性
+// 属性为字母、数字以及 _ : . - @ / 组成的记号，或者用双引号括起来的任意字符串
+// 编译时会把嵌套的AND/OR展开为同一个门，去掉同一个AND/OR门下重复的子树，并把只有一个子节点的门替换为该子节点
+// 化简之后同一属性仍出现在多个叶子上的策略（如 (a AND b) OR (a AND c)）被拒绝，Policy.of和readFrom同样如此
+public final class Policy {
+    // readFrom接受的最大节点个数，防止损坏的数据导致分配过大的数组
+    private static final int MAX_ENCODED_NODES = 1 << 20;
+
+    // threshold[i]为内部节点的门限值，叶子节点为0
+    private final int[] threshold;
+    private final int[] childStart;
+    private final int[] children;
+    // att[i]为叶子节点的属性，内部节点为0
+    private final int[] att;
+    // 全部叶子节点的编号，按编号从小到大
+    private final int[] leaves;
+    private final String source;
+
+    private Policy(int[] threshold, int[] childStart, int[] children, int[] att, String source) {
+        this.threshold = threshold;
+        this.childStart = childStart;
+        this.children = children;
+        this.att = att;
+        this.leaves = IntStream.range(0, att.length).filter(i -> threshold[i] == 0).toArray();
+        this.source = source;
+        checkDistinctLeaves();
+    }
+
+    // 密文组件（C1, C2, E）和私钥组件（Datt, D）都按属性保存，同一属性出现在两个叶子上时只能保存其中一个叶子的组件，
+    // 另一个叶子参与恢复时会得到错误的结果而不报错，因此访问树中每个属性只能出现在一个叶子上
+    private void checkDistinctLeaves() {
+        Map<Integer, Integer> first = new HashMap<>();
+        for (int leaf : leaves) {
+            Integer other = first.putIfAbsent(att[leaf], leaf);
+            if (other != null) {
+                throw new IllegalArgumentException("attribute " + att[leaf] + " appears in more than one leaf (nodes "
+                        + other + " and " + leaf + "); each attribute may appear in only one leaf of an access tree");
+            }
+        }
+    }
+
+    // 由手工构造的Node[]得到Policy，节点编号保持不变；之后对Node[]的修改不影响得到的Policy
+    // 节点必须构成以0为根的树：子节点编号大于父节点编号，除根节点外每个节点恰好是一个节点的子节点，
+    // 否则环或共享的子节点会使递归求值、恢复秘密时无限递归
+    public static Policy of(Node[] nodes) {
+        int n = nodes.length;
+        int[] threshold = new int[n];
+        int[] att = new int[n];
+        int[] childStart = new int[n + 1];
+        // parent[c]为节点c的父节点编号加1，0表示尚未出现
+        int[] parent = new int[n];
+        int total = 0;
+        for (Node node : nodes) {
+            if (!node.isLeaf()) {
+                total += node.children.length;
+            }
+        }
+        int[] children = new int[total];
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            Node node = nodes[i];
+            childStart[i] = pos;
+            if (node.isLeaf()) {
+                att[i] = node.att;
+                continue;
+            }
+            if (node.gate[0] < 1 || node.gate[0] > node.children.length) {
+                throw new IllegalArgumentException("node " + i + " has threshold " + node.gate[0] + " for "
+                        + node.children.length + " children");
+            }
+            threshold[i] = node.gate[0];
+            for (int child : node.children) {
+                // 子节点编号是秘密共享的横坐标，不能为0（0处的值就是父节点的秘密）
+                if (child <= 0 || child >= n) {
+                    throw new IllegalArgumentException("node " + i + " has invalid child index " + child);
+                }
+                if (child <= i) {
+                    throw new IllegalArgumentException("node " + i + " has child " + child
+                            + "; children must have larger indices than their parent");
+                }
+                if (parent[child] != 0) {
+                    throw new IllegalArgumentException("node " + child + " is a child of both node "
+                            + (parent[child] - 1) + " and node " + i);
+                }
+                parent[child] = i + 1;
+                children[pos++] = child;
+            }
+        }
+        for (int i = 1; i < n; i++) {
+            if (parent[i] == 0) {
+                throw new IllegalArgumentException("node " + i + " is not reachable from the root");
+            }
+        }
+        childStart[n] = pos;
+        return new Policy(threshold, childStart, children, att, null);
+    }
+
+    // 二进制形式：节点个数n，之后依次为每个节点的门限（叶子为0），叶子节点接着是属性，内部节点接着是子节点个数和各子节点编号
+    // 与toString再编译不同，读回的Policy与原来的节点编号完全相同（编译会展开、去重并重新按层序编号，
+    // 而节点编号就是秘密共享的横坐标，编号不同的访问树无法解密同一个密文）
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.writeInt(threshold[i]);
+            if (isLeaf(i)) {
+                out.writeInt(att[i]);
+                continue;
+            }
+            out.writeInt(childCount(i));
+            for (int j = childStart[i]; j < childStart[i + 1]; j++) {
+                out.writeInt(children[j]);
+            }
+        }
+    }
+
+    // 数据不完整或访问树不合法时抛出IOException
+    public static Policy readFrom(DataInput in) throws IOException {
+        int n = in.readInt();
+        if (n <= 0 || n > MAX_ENCODED_NODES) {
+            throw new IOException("invalid policy node count: " + n);
+        }
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            int k = in.readInt();
+            if (k == 0) {
+                nodes[i] = new Node(in.readInt());
+                continue;
+            }
+            int count = in.readInt();
+            if (count <= 0 || count >= n) {
+                throw new IOException("node " + i + " has invalid child count " + count);
+            }
+            int[] nodeChildren = new int[count];
+            for (int j = 0; j < count; j++) {
+                nodeChildren[j] = in.readInt();
+            }
+            nodes[i] = new Node(new int[]{k, count}, nodeChildren);
+        }
+        try {
+            return of(nodes);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException("invalid policy: " + e.getMessage(), e);
+        }
+    }
+
+    public int size() {
+        return att.length;
+    }
+
+    public boolean isLeaf(int i) {
+        return threshold[i] == 0;
+    }
+
+    public int threshold(int i) {
+        return threshold[i];
+    }
+
+    public int att(int i) {
+        return att[i];
+    }
+
+    public int childCount(int i) {
+        return childStart[i + 1] - childStart[i];
+    }
+
+    public int child(int i, int j) {
+        return children[childStart[i] + j];
+    }
+
+    public int[] children(int i) {
+        return Arrays.copyOfRange(children, childStart[i], childStart[i + 1]);
+    }
+
+    public int leafCount() {
+        return leaves.length;
+    }
+
+    public int leaf(int j) {
+        return leaves[j];
+    }
+
+    // 访问树中出现的全部属性（去重，按叶子编号的顺序）
+    public int[] attributes() {
+        return Arrays.stream(leaves).map(i -> att[i]).distinct().toArray();
+    }
+
+    // 编译前的策略字符串，由Node[]转换得到时为null
+    public String getSource() {
+        return source;
+    }
+
+    // 转换为现有接口使用的Node[]，每次调用都返回新的数组，调用方可以随意修改
+    public Node[] toNodes() {
+        Node[] nodes = new Node[size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = isLeaf(i) ? new Node(att[i]) : new Node(new int[]{threshold[i], childCount(i)}, children(i));
+        }
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return toString(0);
+    }
+
+    private String toString(int i) {
+        if (isLeaf(i)) {
+            return Integer.toString(att[i]);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(threshold[i]).append(" of (");
+        for (int j = 0; j < childCount(i); j++) {
+            if (j > 0) {
+                sb.append(", ");
+            }
+            sb.append(toString(child(i, j)));
+        }
+        return sb.append(')').toString();
+    }
+
+    // ---------------------------------------------------------------- 编译
+
+    // 属性必须全部是整数
+    public static Policy compile(String policy) {
+        return compile(policy, null);
+    }
+
+    // dictionary不为null时，属性通过AttributeDictionary.resolve转换为属性编号；为null时属性必须全部是整数
+    public static Policy compile(String policy, AttributeDictionary dictionary) {
+        Parser parser = new Parser(policy, dictionary);
+        Expr root = parser.parseExpr();
+        if (parser.peek() != null) {
+            throw parser.error("unexpected '" + parser.peek() + "'");
+        }
+        root = simplify(root);
+        return layout(root, policy);
+    }
+
+    // 解析得到的中间表示，leaf时att有效，否则为k-of-children门
+    private static final class Expr {
+        final int att;
+        final int k;
+        final List<Expr> children;
+
+        Expr(int att) {
+            this.att = att;
+            this.k = 0;
+            this.children = null;
+        }
+
+        Expr(int k, List<Expr> children) {
+            this.att = 0;
+            this.k = k;
+            this.children = children;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        boolean isAnd() {
+            return !isLeaf() && k == children.size();
+        }
+
+        boolean isOr() {
+            return !isLeaf() && k == 1;
+        }
+
+        // 用于判断两棵子树是否相同
+        String key() {
+            if (isLeaf()) {
+                return Integer.toString(att);
+            }
+            StringBuilder sb = new StringBuilder().append(k).append('(');
+            for (Expr child : children) {
+                sb.append(child.key()).append(',');
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    // 自底向上化简：展开嵌套的AND/OR，去掉AND/OR门下重复的子树，单子节点的门替换为子节点
+    private static Expr simplify(Expr e) {
+        if (e.isLeaf()) {
+            return e;
+        }
+        boolean and = e.isAnd();
+        boolean or = e.isOr();
+        List<Expr> flat = new ArrayList<>();
+        for (Expr child : e.children) {
+            Expr c = simplify(child);
+            // AND下的AND、OR下的OR可以合并为同一个门（1-of-1同时是AND和OR，已在simplify中被替换掉）
+            if ((and && c.isAnd()) || (or && c.isOr())) {
+                flat.addAll(c.children);
+            }
+            else {
+                flat.add(c);
+            }
+        }
+        int k = e.k;
+        if (and || or) {
+            // 对AND/OR门，重复的子树不影响是否满足，只会多出配对和指数运算
+            Map<String, Expr> unique = new LinkedHashMap<>();
+            for (Expr c : flat) {
+                unique.putIfAbsent(c.key(), c);
+            }
+            flat = new ArrayList<>(unique.values());
+            k = and ? flat.size() : 1;
+        }
+        if (flat.size() == 1) {
+            return flat.get(0);
+        }
+        return new Expr(k, flat);
+    }
+
+    // 按层序为节点编号并填充扁平数组
+    private static Policy layout(Expr root, String source) {
+        List<Expr> order = new ArrayList<>();
+        ArrayDeque<Expr> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Expr e = queue.poll();
+            order.add(e);
+            if (!e.isLeaf()) {
+                queue.addAll(e.children);
+            }
+        }
+        int n = order.size();
+        int[] threshold = new int[n];
+        int[] att = new int[n];
+        int[] childStart = new int[n + 1];
+        int[] children = new int[n - 1];
+        // 层序中子节点的编号是连续的，next为下一个待分配的编号
+        int next = 1;
+        int pos = 0;
+        for (int i = 0; i < n; i++) {
+            Expr e = order.get(i);
+            childStart[i] = pos;
+            if (e.isLeaf()) {
+                att[i] = e.att;
+            }
+            else {
+                threshold[i] = e.k;
+                for (int j = 0; j < e.children.size(); j++) {
+                    children[pos++] = next++;
+                }
+            }
+        }
+        childStart[n] = pos;
+        return new Policy(threshold, childStart, children, att, source);
+    }
+
+    // ---------------------------------------------------------------- 解析
+
+    private static final class Parser {
+        private final String text;
+        private final AttributeDictionary dictionary;
+        private int pos;
+
+        Parser(String text, AttributeDictionary dictionary) {
+            this.text = text;
+            this.dictionary = dictionary;
+        }
+
+        Expr parseExpr() {
+            List<Expr> terms = new ArrayList<>();
+            terms.add(parseAnd());
+            while ("OR".equalsIgnoreCase(peek())) {
+                next();
+                terms.add(parseAnd());
+            }
+            return terms.size() == 1 ? terms.get(0) : new Expr(1, terms);
+        }
+
+        Expr parseAnd() {
+            List<Expr> factors = new ArrayList<>();
+            factors.add(parseFactor());
+            while ("AND".equalsIgnoreCase(peek())) {
+                next();
+                factors.add(parseFactor());
+            }
+            return factors.size() == 1 ? factors.get(0) : new Expr(factors.size(), factors);
+        }
+
+        Expr parseFactor() {
+            String token = next();
+            if (token == null) {
+                throw error("unexpected end of policy");
+            }
+            if (token.equals("(")) {
+                Expr e = parseExpr();
+                expect(")");
+                return e;
+            }
+            if (token.matches("\\d+") && "of".equalsIgnoreCase(peek())) {
+                next();
+                int k = Integer.parseInt(token);
+                expect("(");
+                List<Expr> children = new ArrayList<>();
+                children.add(parseExpr());
+                while (",".equals(peek())) {
+                    next();
+                    children.add(parseExpr());
+                }
+                expect(")");
+                if (k < 1 || k > children.size()) {
+                    throw error("threshold " + k + " out of range for " + children.size() + " children");
+                }
+                return new Expr(k, children);
+            }
+            if (token.equals(")") || token.equals(",") || token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                throw error("unexpected '" + token + "'");
+            }
+            return new Expr(attribute(token));
+        }
+
+        // 与keygen/encrypt的字符串重载相同，通过AttributeDictionary.resolve转换，引号只用于包含特殊字符的属性
+        private int attribute(String token) {
+            boolean quoted = token.startsWith("\"");
+            String name = quoted ? token.substring(1, token.length() - 1) : token;
+            if (dictionary != null) {
+                try {
+                    return dictionary.resolve(name);
+                }
+                catch (IllegalArgumentException e) {
+                    throw error(e.getMessage());
+                }
+            }
+            if (!AttributeDictionary.isInteger(name)) {
+                throw error("non-integer attribute '" + name + "' requires an attribute dictionary");
+            }
+            int att;
+            try {
+                att = Integer.parseInt(name);
+            }
+            catch (NumberFormatException e) {
+                throw error("integer attribute out of range: " + name);
+            }
+            if (att == 0) {
+                throw error("attribute 0 is reserved");
+            }
+            return att;
+        }
+
+        private void expect(String token) {
+            String t = next();
+            if (!token.equals(t)) {
+                throw error("expected '" + token + "' but found " + (t == null ? "end of policy" : "'" + t + "'"));
+            }
+        }
+
+        String peek() {
+            int save = pos;
+            String t = next();
+            pos = save;
+            return t;
+        }
+
+        String next() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos >= text.length()) {
+                return null;
+            }
+            char c = text.charAt(pos);
+            if (c == '(' || c == ')' || c == ',') {
+                pos++;
+                return String.valueOf(c);
+            }
+            int start = pos;
+            if (c == '"') {
+                int end = text.indexOf('"', pos + 1);
+                if (end < 0) {
+                    throw error("unterminated quoted attribute");
+                }
+                pos = end + 1;
+                return text.substring(start, pos);
+            }
+            while (pos < text.length() && isAttributeChar(text.charAt(pos))) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("unexpected character '" + c + "'");
+            }
+            return text.substring(start, pos);
+        }
+
+        private static boolean isAttributeChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == ':' || c == '.' || c == '-' || c == '@' || c == '/';
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in policy: " + text);
+        }
+    }
+}
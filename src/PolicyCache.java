@@ -0,0 +1,74 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 策略字符串 -> 编译后的Policy的有界缓存，按LRU淘汰，可被多个线程共享
+// Policy不可变，同一个缓存项可以同时被多个加密/解密操作使用
+public class PolicyCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // 非整数属性通过该字典转换为属性编号，为null时策略中的属性必须全部是整数
+    private final AttributeDictionary dictionary;
+    private final int capacity;
+    private final LinkedHashMap<String, Policy> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PolicyCache(AttributeDictionary dictionary) {
+        this(dictionary, DEFAULT_CAPACITY);
+    }
+
+    public PolicyCache(AttributeDictionary dictionary, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.dictionary = dictionary;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Policy>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Policy> eldest) {
+                return size() > PolicyCache.this.capacity;
+            }
+        };
+    }
+
+    // 策略字符串有语法错误时抛出IllegalArgumentException，错误的策略不会被缓存
+    public Policy get(String policy) {
+        synchronized (entries) {
+            Policy p = entries.get(policy);
+            if (p != null) {
+                hits.incrementAndGet();
+                return p;
+            }
+        }
+        misses.incrementAndGet();
+        Policy p = Policy.compile(policy, dictionary);
+        synchronized (entries) {
+            entries.put(policy, p);
+        }
+        return p;
+    }
+
+    public AttributeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PolicyCache{size=" + size() + ", capacity=" + capacity + ", hits=" + hits + ", misses=" + misses + "}";
+    }
+}
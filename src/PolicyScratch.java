@@ -0,0 +1,43 @@
+import it.unisa.dia.gas.jpbc.Element;
+
+import java.util.Arrays;
+
+// 一次加密/解密操作中与访问树相关的临时状态：每个节点的秘密分片（或恢复出的秘密值）以及是否可恢复
+// 以节点编号为下标，与不可变的Policy配合使用，取代Node中的secretShare和valid字段
+// 每个线程缓存一个实例，acquire/close之间独占使用；同一线程嵌套使用时临时分配新的实例
+public final class PolicyScratch implements AutoCloseable {
+    private static final ThreadLocal<PolicyScratch> POOL = ThreadLocal.withInitial(PolicyScratch::new);
+
+    public Element[] share = new Element[0];
+    public boolean[] valid = new boolean[0];
+    // 本次操作使用的长度，close时只需要清理这一部分
+    private int size;
+    private boolean inUse;
+
+    private PolicyScratch() {
+    }
+
+    // 取得一个至少能容纳size个节点、状态全部为空的实例，用完后必须close（可用try-with-resources）
+    public static PolicyScratch acquire(int size) {
+        PolicyScratch scratch = POOL.get();
+        if (scratch.inUse) {
+            scratch = new PolicyScratch();
+        }
+        if (scratch.share.length < size) {
+            scratch.share = new Element[size];
+            scratch.valid = new boolean[size];
+        }
+        scratch.size = size;
+        scratch.inUse = true;
+        return scratch;
+    }
+
+    // 清空状态并归还，避免缓存的实例继续引用本次操作的群元素
+    @Override
+    public void close() {
+        Arrays.fill(share, 0, size, null);
+        Arrays.fill(valid, 0, size, false);
+        size = 0;
+        inUse = false;
+    }
+}
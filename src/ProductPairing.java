@@ -0,0 +1,34 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import it.unisa.dia.gas.plaf.jpbc.pairing.a.TypeAPairing;
+import it.unisa.dia.gas.plaf.jpbc.pairing.a.TypeATateProjectiveMillerPairingMap;
+import it.unisa.dia.gas.plaf.jpbc.pairing.map.PairingMap;
+
+// 配对连乘 e(a1,b1)*e(a2,b2)*...*e(an,bn)
+// 各个Miller循环的结果先相乘，最后只做一次最终幂运算（final exponentiation）
+// type a曲线默认使用的naf-miller-projective实现不支持配对连乘（内部仍然逐个计算完整配对），
+// 因此对type a曲线单独使用支持连乘的miller-projective实现
+public class ProductPairing {
+    private final Pairing bp;
+    private final PairingMap productMap;
+
+    public ProductPairing(Pairing bp) {
+        this.bp = bp;
+        if (!bp.isProductPairingSupported() && bp instanceof TypeAPairing) {
+            this.productMap = new TypeATateProjectiveMillerPairingMap((TypeAPairing) bp);
+        }
+        else {
+            this.productMap = null;
+        }
+    }
+
+    public Element pairing(Element[] in1, Element[] in2) {
+        if (in1.length != in2.length) {
+            throw new IllegalArgumentException("Array lengths mismatch.");
+        }
+        if (productMap != null) {
+            return productMap.pairing(in1, in2);
+        }
+        return bp.pairing(in1, in2);
+    }
+}
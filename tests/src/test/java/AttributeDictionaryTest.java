@@ -0,0 +1,72 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 字符串属性：策略编译器与keygen/encrypt的字符串重载对同一字符串得到同一编号，字典编号不与整数属性重叠
+class AttributeDictionaryTest {
+
+    private static Pairing bp;
+
+    @BeforeAll
+    static void setup() {
+        bp = ABEUtils.getPairing("a.properties");
+    }
+
+    @Test
+    void integerStringsMapToTheSameAttributeEverywhere() throws Exception {
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        AttributeDictionary dict = engine.getDictionary();
+        Policy policy = Policy.compile("2024 AND \"dept:hr\"", dict);
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext ct = engine.encrypt(message, policy);
+        assertEquals(message, engine.decrypt(policy, ct, engine.keygen(new String[]{"2024", "dept:hr"})));
+
+        // 字典编号在保留范围内，与整数属性1不会混淆
+        assertNotEquals(1, dict.resolve("dept:hr"));
+        assertEquals("dept:hr", dict.name(dict.resolve("dept:hr")));
+        Policy mixed = Policy.compile("1 AND dept:hr", dict);
+        assertNull(engine.decrypt(mixed, engine.encrypt(message, mixed), engine.keygen(new String[]{"dept:hr"})));
+        assertThrows(IllegalArgumentException.class,
+                () -> Policy.compile(Integer.toString(AttributeDictionary.FIRST_ID), dict));
+        assertThrows(IllegalArgumentException.class, () -> engine.keygen(new String[]{"0"}));
+    }
+
+    @Test
+    void kpabeStringAttributes() {
+        KPABEEngine engine = KPABEEngine.setup(bp).withFixedBaseTables(FixedBaseTable.DEFAULT_WINDOW, 64L << 20)
+                .withAttributes("2024", "dept:hr", "dept:it");
+        AttributeDictionary dict = engine.getDictionary();
+        assertSame(engine, engine.withAttributes(2024));
+        assertEquals(FixedBaseTable.DEFAULT_WINDOW, engine.getFixedBaseWindow());
+
+        Policy keyPolicy = Policy.compile("2024 AND (dept:hr OR dept:it)", dict);
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        KPABECiphertext ct = engine.encrypt(message, new String[]{"2024", "dept:it"});
+        assertEquals(message, engine.decrypt(keyPolicy, ct, engine.keygen(keyPolicy)));
+    }
+
+    // 属性全集变大后预计算表的总大小仍在预算之内，超出时窗口缩小
+    @Test
+    void growingUniverseRespectsTableBudget() {
+        KPABEEngine engine = KPABEEngine.setup(bp, 2);
+        long perTable = FixedBaseTable.sizeInBytes(engine.getPublicKey().g, 4);
+        long gtTable = FixedBaseTable.sizeInBytes(engine.getPublicKey().egg_y, 4);
+        engine = engine.withFixedBaseTables(4, 3 * perTable + gtTable);
+        assertEquals(4, engine.getFixedBaseWindow());
+        engine = engine.withAttributes(3, 4, 5);
+        assertTrue(engine.getFixedBaseWindow() < 4);
+
+        Policy keyPolicy = Policy.compile("2 of (1, 3, 5)");
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        KPABECiphertext ct = engine.encrypt(message, new int[]{3, 5});
+        assertEquals(message, engine.decrypt(keyPolicy, ct, engine.keygen(keyPolicy)));
+    }
+}
@@ -0,0 +1,163 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 密文库：按头部判断后只解码选中叶子的解密结果与完整解密一致，索引筛出的候选条目恰好是能解密的条目，
+// 策略的二进制形式保留节点编号
+class CiphertextStoreTest {
+
+    private static Pairing bp;
+
+    @BeforeAll
+    static void setup() {
+        bp = ABEUtils.getPairing("a.properties");
+    }
+
+    // 手工构造的访问树节点编号不是层序的，toString再编译会改变编号，二进制形式不会
+    @Test
+    void policyBinaryFormPreservesNodeIndices() throws IOException {
+        Node[] nodes = {
+                new Node(new int[]{2, 2}, new int[]{2, 1}),
+                new Node(new int[]{1, 2}, new int[]{3, 4}),
+                new Node(5), new Node(6), new Node(7)};
+        Policy policy = Policy.of(nodes);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        policy.writeTo(new DataOutputStream(bytes));
+        Policy read = Policy.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(policy.size(), read.size());
+        for (int i = 0; i < policy.size(); i++) {
+            assertEquals(policy.att(i), read.att(i));
+            assertEquals(policy.childCount(i), read.childCount(i));
+        }
+
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        assertThrows(IOException.class,
+                () -> Policy.readFrom(new DataInputStream(new ByteArrayInputStream(truncated))));
+
+        // 环、共享的子节点和不可达的节点都不是树
+        int[][] notTrees = {
+                {3, 1, 1, 1, 1, 1, 2, 1, 1, 1},
+                {3, 1, 2, 1, 2, 1, 1, 2, 0, 5},
+                {4, 1, 1, 1, 0, 5, 0, 6, 0, 7}};
+        for (int[] header : notTrees) {
+            ByteArrayOutputStream crafted = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(crafted);
+            for (int v : header) {
+                out.writeInt(v);
+            }
+            assertThrows(IOException.class,
+                    () -> Policy.readFrom(new DataInputStream(new ByteArrayInputStream(crafted.toByteArray()))));
+        }
+    }
+
+    @Test
+    void cpabe(@TempDir Path dir) throws Exception {
+        CPABEEngine engine = CPABEEngine.setup(bp);
+        Policy[] policies = {Policy.compile("1 AND 2 of (2, 3, 4)"), Policy.compile("5 OR 6")};
+        Element[] messages = new Element[4];
+        Path file = dir.resolve("cp.abes");
+        try (CiphertextStore.Writer writer = CiphertextStore.create(file, ABEBinaryFormat.Type.CP_CIPHERTEXT, true)) {
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = bp.getGT().newRandomElement().getImmutable();
+                assertEquals(i, writer.append(policies[i % 2], engine.encrypt(messages[i], policies[i % 2])));
+            }
+        }
+        CiphertextStore store = CiphertextStore.open(file);
+        assertEquals(messages.length, store.size());
+        CPABEDecryptionKey dk = engine.prepare(engine.keygen(new int[]{1, 2, 3}));
+        for (int i = 0; i < messages.length; i++) {
+            CiphertextStore.Entry entry = store.entry(i);
+            for (DecryptMode mode : DecryptMode.values()) {
+                if (i % 2 == 0) {
+                    assertEquals(messages[i], engine.decrypt(entry, dk, mode), mode.name());
+                }
+                else {
+                    assertNull(engine.decrypt(entry, dk, mode), mode.name());
+                }
+            }
+        }
+
+        CiphertextIndex index = CiphertextIndex.build(store);
+        assertEquals(2, index.policyCount());
+        assertEquals(BitSet.valueOf(new long[]{0b0101}), index.candidates(dk.sk.userAttList));
+        try (DecryptionService service = DecryptionService.withBoundedPool(engine, null, 2)) {
+            service.registerCPKey("user", dk.sk);
+            DecryptionService.BulkResult bulk = service.decryptAllCP("user", store, index).get();
+            assertTrue(bulk.isOk());
+            assertEquals(Set.of(0, 2), bulk.results.keySet());
+            assertEquals(messages[2], bulk.results.get(2).message);
+
+            // 加载器只读取目录中的私钥文件，缓存容量之外的私钥被淘汰后重新加载
+            Path keys = Files.createDirectories(dir.resolve("keys"));
+            try (OutputStream out = Files.newOutputStream(keys.resolve("loaded.bin"))) {
+                ABEBinaryFormat.write(dk.sk, out);
+            }
+            service.setCPKeyLoader(DecryptionService.cpBinaryLoader(bp, keys.toString()));
+            service.setKeyCacheCapacity(1);
+            CPABECiphertext ct = store.entry(0).decodeCP(bp, store.entry(0).attributes());
+            Files.copy(keys.resolve("loaded.bin"), dir.resolve("outside.bin"));
+            assertEquals(DecryptResult.Status.KEY_LOAD_FAILED,
+                    service.decryptCPNow("../outside", policies[0], ct).status);
+            assertEquals(messages[0], service.decryptCPNow("loaded", policies[0], ct).message);
+            assertEquals(2, service.cachedKeyCount());
+
+            // 密文缺少访问树叶子的组件属于输入错误
+            assertEquals(DecryptResult.Status.INVALID_INPUT,
+                    service.decryptCPNow("user", policies[1], ct).status);
+        }
+
+        // 没有写入索引的文件不能打开
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 1));
+        assertThrows(IOException.class, () -> CiphertextStore.open(file));
+    }
+
+    @Test
+    void kpabe(@TempDir Path dir) throws Exception {
+        KPABEEngine engine = KPABEEngine.setup(bp, 6);
+        Policy keyPolicy = Policy.compile("2 of (1, 2, 3)");
+        KPABESecretKey sk = engine.keygen(keyPolicy);
+        int[][] atts = {{1, 3, 5}, {1, 4}, {2, 3}, {4, 5, 6}};
+        Element[] messages = new Element[atts.length];
+        Path file = dir.resolve("kp.abes");
+        try (CiphertextStore.Writer writer = CiphertextStore.create(file, ABEBinaryFormat.Type.KP_CIPHERTEXT, false)) {
+            for (int i = 0; i < atts.length; i++) {
+                messages[i] = bp.getGT().newRandomElement().getImmutable();
+                writer.append(engine.encrypt(messages[i], atts[i]));
+            }
+        }
+        CiphertextStore store = CiphertextStore.open(file);
+        assertArrayEquals(atts[1], store.entry(1).attributes());
+        assertNull(store.entry(0).policy());
+        for (DecryptMode mode : DecryptMode.values()) {
+            assertEquals(messages[0], engine.decrypt(keyPolicy, store.entry(0), sk, mode), mode.name());
+            assertNull(engine.decrypt(keyPolicy, store.entry(1), sk, mode), mode.name());
+        }
+
+        // 2 of (1, 2, 3)在属性位图上求值，只有第0、2条的属性列表含有其中两个属性
+        CiphertextIndex index = CiphertextIndex.build(store);
+        assertEquals(BitSet.valueOf(new long[]{0b0101}), index.candidates(keyPolicy));
+        assertEquals(BitSet.valueOf(new long[]{0b1111}), index.candidates(Policy.compile("1 OR 4 OR 2")));
+        assertEquals(BitSet.valueOf(new long[]{0b1000}), index.candidates(Policy.compile("4 AND 6")));
+    }
+}
@@ -0,0 +1,112 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 在线/离线加密：带修正值C3的密文在所有解密方式、序列化和外包解密下都与普通密文一样可以解密
+class EncryptionPoolTest {
+
+    private static Pairing bp;
+    private static CPABEEngine engine;
+    private static Policy policy;
+
+    @BeforeAll
+    static void setup() {
+        bp = ABEUtils.getPairing("a.properties");
+        engine = CPABEEngine.setup(bp);
+        policy = Policy.compile("(1 AND 2) OR 2 of (3, 4, 5)");
+    }
+
+    @Test
+    void onlineCiphertextDecrypts() throws Exception {
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext ct;
+        try (EncryptionPool pool = new EncryptionPool(engine, 2, 2, 0)) {
+            pool.register(policy.attributes());
+            pool.fill();
+            ct = pool.encrypt(message, policy);
+            assertEquals(1, pool.getSessionHits());
+            assertEquals(policy.leafCount(), pool.getLeafHits());
+        }
+        assertTrue(ct.isOnline());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(ct, out, true);
+        CPABECiphertext read = ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(out.toByteArray()), bp);
+        CPABEDecryptionKey dk = engine.prepare(engine.keygen(new int[]{3, 5, 7}));
+        CPABEDecryptionKey unsatisfied = engine.prepare(engine.keygen(new int[]{1, 4, 6}));
+        for (DecryptMode mode : DecryptMode.values()) {
+            assertEquals(message, engine.decrypt(policy, ct, dk, mode), mode.name());
+            assertEquals(message, engine.decrypt(policy, read, dk, mode), mode + " after round trip");
+            assertNull(engine.decrypt(policy, ct, unsatisfied, mode), mode.name());
+        }
+
+        CPABEOutsourcedKey key = engine.outsource(dk.sk);
+        CPABEPartialCiphertext pct = engine.transform(policy, ct, engine.prepare(key.transformKey));
+        assertEquals(message, engine.decrypt(pct, key.retrievalKey));
+    }
+
+    // 通过CPABE的文件接口解密：在线/离线加密的密文需要公钥，不提供公钥时在解密前报告参数错误
+    @Test
+    void onlineCiphertextThroughFileWrapper(@TempDir Path dir) throws Exception {
+        Element message = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext ct;
+        try (EncryptionPool pool = new EncryptionPool(engine, 1, 1, 0)) {
+            pool.register(policy.attributes());
+            pool.fill();
+            ct = pool.encrypt(message, policy);
+        }
+        String pkFile = dir.resolve("pk.properties").toString();
+        String skFile = dir.resolve("sk.properties").toString();
+        String ctFile = dir.resolve("ct.properties").toString();
+        CPABE.storePropToFile(engine.getPublicKey().toProperties(), pkFile);
+        CPABE.storePropToFile(engine.keygen(new int[]{1, 2}).toProperties(), skFile);
+        CPABE.storePropToFile(ct.toProperties(), ctFile);
+
+        assertEquals(message, CPABE.Decrypt("a.properties", policy.toNodes(), ctFile, skFile, pkFile));
+        assertThrows(IllegalArgumentException.class,
+                () -> CPABE.Decrypt("a.properties", policy.toNodes(), ctFile, skFile));
+
+        // 普通密文不需要公钥
+        Element plain = bp.getGT().newRandomElement().getImmutable();
+        CPABE.storePropToFile(engine.encrypt(plain, policy).toProperties(), ctFile);
+        assertEquals(plain, CPABE.Decrypt("a.properties", policy.toNodes(), ctFile, skFile));
+    }
+
+    // 池为空时即时计算，密文仍然正确，并记为未命中
+    @Test
+    void emptyPoolFallsBack() throws Exception {
+        try (EncryptionPool pool = new EncryptionPool(engine, 1, 1, 0)) {
+            Element message = bp.getGT().newRandomElement().getImmutable();
+            CPABECiphertext ct = pool.encrypt(message, policy);
+            assertEquals(1, pool.getSessionMisses());
+            assertEquals(policy.leafCount(), pool.getLeafMisses());
+            assertEquals(policy.attributes().length, pool.attributeCount());
+            assertEquals(message, engine.decrypt(policy, ct, engine.prepare(engine.keygen(new int[]{1, 2}))));
+        }
+    }
+
+    // 后台线程在材料被取出后补满池
+    @Test
+    void backgroundRefill() throws InterruptedException {
+        try (EncryptionPool pool = new EncryptionPool(engine, 2, 1, 1)) {
+            pool.register(policy.attributes());
+            pool.encrypt(bp.getGT().newRandomElement(), policy);
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (pool.availableSessions() < 2 || pool.availableLeaves(5) < 1) {
+                assertTrue(System.currentTimeMillis() < deadline, pool.toString());
+                Thread.sleep(10);
+            }
+        }
+    }
+}
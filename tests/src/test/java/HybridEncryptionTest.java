@@ -0,0 +1,142 @@
+import it.unisa.dia.gas.jpbc.Pairing;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// 混合加密：顺序解密与随机访问解密的结果与明文一致，篡改、截断和策略不满足都能被发现
+class HybridEncryptionTest {
+    private static final int CHUNK = 100;
+
+    private static Pairing bp;
+    private static CPABEEngine engine;
+    private static Policy policy;
+    private static CPABEDecryptionKey dk;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        bp = ABEUtils.getPairing("a.properties");
+        engine = CPABEEngine.setup(bp);
+        policy = Policy.compile("1 AND 2");
+        dk = engine.prepare(engine.keygen(new int[]{1, 2}));
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        for (int size : new int[]{0, 1, CHUNK, 3 * CHUNK, 3 * CHUNK + 7}) {
+            byte[] data = random(size);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(HybridEncryption.decrypt(engine, dk, new ByteArrayInputStream(encrypt(data)), out));
+            assertArrayEquals(data, out.toByteArray(), "size " + size);
+        }
+    }
+
+    @Test
+    void randomAccess(@TempDir Path dir) throws IOException {
+        byte[] data = random(5 * CHUNK + 42);
+        Path file = dir.resolve("data.abe");
+        Files.write(file, encrypt(data));
+        try (FileChannel channel = FileChannel.open(file)) {
+            HybridEncryption.ChunkReader reader = HybridEncryption.open(channel, engine, dk);
+            assertEquals(6, reader.chunkCount());
+            assertEquals(data.length, reader.plaintextLength());
+            for (long i = reader.chunkCount() - 1; i >= 0; i--) {
+                int from = (int) i * CHUNK;
+                assertArrayEquals(Arrays.copyOfRange(data, from, Math.min(data.length, from + CHUNK)), reader.readChunk(i));
+            }
+        }
+    }
+
+    @Test
+    void tamperingAndTruncationAreDetected() throws IOException {
+        byte[] ct = encrypt(random(3 * CHUNK));
+        byte[] flipped = ct.clone();
+        flipped[ct.length - CHUNK] ^= 1;
+        assertThrows(IOException.class,
+                () -> HybridEncryption.decrypt(engine, dk, new ByteArrayInputStream(flipped), new ByteArrayOutputStream()));
+        // 去掉完整的最后一块后，前一块不是以“最后一块”的nonce加密的
+        byte[] truncated = Arrays.copyOf(ct, ct.length - CHUNK - HybridEncryption.TAG_BYTES);
+        assertThrows(IOException.class,
+                () -> HybridEncryption.decrypt(engine, dk, new ByteArrayInputStream(truncated), new ByteArrayOutputStream()));
+
+        // 伪造的头部：未知类型、过大的分块大小（加上认证标签后会溢出）、过大的访问策略长度，都在分配缓冲区前被拒绝
+        int[][] headerCorruptions = {{5, 99}, {8, Integer.MAX_VALUE - 8}, {8, 0}, {28, Integer.MAX_VALUE}};
+        for (int[] corruption : headerCorruptions) {
+            byte[] bytes = ct.clone();
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            if (corruption[0] == 5) {
+                buf.put(5, (byte) corruption[1]);
+            }
+            else {
+                buf.putInt(corruption[0], corruption[1]);
+            }
+            assertThrows(IOException.class,
+                    () -> HybridEncryption.decrypt(engine, dk, new ByteArrayInputStream(bytes), new ByteArrayOutputStream()),
+                    "offset " + corruption[0]);
+        }
+    }
+
+    @Test
+    void unsatisfiedKey() throws Exception {
+        CPABEDecryptionKey other = engine.prepare(engine.keygen(new int[]{1, 3}));
+        byte[] ct = encrypt(random(10));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(HybridEncryption.decrypt(engine, other, new ByteArrayInputStream(ct), out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void kpabeRoundTrip() throws IOException {
+        KPABEEngine kp = KPABEEngine.setup(bp, 5);
+        Policy keyPolicy = Policy.compile("2 of (1, 2, 3)");
+        KPABESecretKey sk = kp.keygen(keyPolicy);
+        byte[] data = random(2 * CHUNK + 1);
+        ByteArrayOutputStream ct = new ByteArrayOutputStream();
+        HybridEncryption.encrypt(kp, new int[]{1, 3}, new ByteArrayInputStream(data), ct, CHUNK);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(HybridEncryption.decrypt(kp, keyPolicy, sk, new ByteArrayInputStream(ct.toByteArray()), out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    // 手工构造的访问树不是编译得到的层序编号，头部必须原样保存节点编号才能解密
+    @Test
+    void handBuiltPolicy() throws IOException {
+        Policy handBuilt = Policy.of(new Node[]{
+                new Node(new int[]{2, 2}, new int[]{2, 1}),
+                new Node(new int[]{1, 2}, new int[]{3, 4}),
+                new Node(1), new Node(2), new Node(3)});
+        byte[] data = random(CHUNK + 1);
+        ByteArrayOutputStream ct = new ByteArrayOutputStream();
+        HybridEncryption.encrypt(engine, handBuilt, new ByteArrayInputStream(data), ct, CHUNK);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(HybridEncryption.decrypt(engine, dk, new ByteArrayInputStream(ct.toByteArray()), out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    private static byte[] encrypt(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HybridEncryption.encrypt(engine, policy, new ByteArrayInputStream(data), out, CHUNK);
+        return out.toByteArray();
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,83 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// 重新生成KnownAnswerTest使用的已知答案向量，在仓库根目录下运行：
+//   java -cp <tests的测试类路径> KnownAnswerGenerator [输出目录]
+// 只有在二进制格式或方案本身发生有意的变化时才需要重新生成，否则KnownAnswerTest的失败说明出现了不兼容的改动
+public class KnownAnswerGenerator {
+
+    public static final String CP_POLICY = "(1 AND 2) OR 2 of (3, 4, 5)";
+    public static final int[] CP_USER_ATTS = {3, 5, 7};
+    public static final int[] CP_UNSATISFIED_ATTS = {1, 4, 6};
+    public static final String KP_POLICY = "(1 AND 2) OR 2 of (3, 4, 5)";
+    public static final int[] KP_MESSAGE_ATTS = {1, 2, 9};
+    public static final int[] KP_UNSATISFIED_ATTS = {1, 3};
+    public static final int KP_UNIVERSE = 10;
+    public static final int[] HASHED_ATTS = {1, 2, 3, 100, 65536};
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "tests/src/test/resources/kat");
+        Files.createDirectories(dir);
+        Pairing bp = ABEUtils.getPairing("a.properties");
+        Properties kat = new Properties();
+
+        for (int att : HASHED_ATTS) {
+            kat.setProperty("hash." + att, hex(AttributeHashCache.hash(bp, att).toBytes()));
+        }
+
+        CPABEEngine cp = CPABEEngine.setup(bp);
+        Element cpMessage = bp.getGT().newRandomElement().getImmutable();
+        CPABECiphertext cpCt = cp.encrypt(cpMessage, Policy.compile(CP_POLICY));
+        try (OutputStream out = new FileOutputStream(dir.resolve("cp-pk.bin").toFile())) {
+            ABEBinaryFormat.write(cp.getPublicKey(), out);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("cp-sk.bin").toFile())) {
+            ABEBinaryFormat.write(cp.keygen(CP_USER_ATTS), out);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("cp-sk-unsatisfied.bin").toFile())) {
+            ABEBinaryFormat.write(cp.keygen(CP_UNSATISFIED_ATTS), out);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("cp-ct.bin").toFile())) {
+            ABEBinaryFormat.write(cpCt, out, true);
+        }
+        kat.setProperty("cp.message", hex(cpMessage.toBytes()));
+
+        KPABEEngine kp = KPABEEngine.setup(bp, KP_UNIVERSE);
+        Element kpMessage = bp.getGT().newRandomElement().getImmutable();
+        KPABECiphertext kpCt = kp.encrypt(kpMessage, KP_MESSAGE_ATTS);
+        try (OutputStream out = new FileOutputStream(dir.resolve("kp-pk.bin").toFile())) {
+            ABEBinaryFormat.write(kp.getPublicKey(), out);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("kp-sk.bin").toFile())) {
+            ABEBinaryFormat.write(kp.keygen(Policy.compile(KP_POLICY)), out);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("kp-ct.bin").toFile())) {
+            ABEBinaryFormat.write(kpCt, out, true);
+        }
+        try (OutputStream out = new FileOutputStream(dir.resolve("kp-ct-unsatisfied.bin").toFile())) {
+            ABEBinaryFormat.write(kp.encrypt(kpMessage, KP_UNSATISFIED_ATTS), out, true);
+        }
+        kat.setProperty("kp.message", hex(kpMessage.toBytes()));
+
+        try (Writer out = Files.newBufferedWriter(dir.resolve("kat.properties"), StandardCharsets.UTF_8)) {
+            kat.store(out, "known-answer vectors, see KnownAnswerGenerator");
+        }
+    }
+
+    public static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
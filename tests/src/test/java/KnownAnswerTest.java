@@ -0,0 +1,248 @@
+import it.unisa.dia.gas.jpbc.Element;
+import it.unisa.dia.gas.jpbc.Pairing;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// 已知答案测试：
+//   - 多项式求值、拉格朗日因子、SHA-1的结果可以手工算出
+//   - 属性哈希和两个方案的公钥/私钥/密文来自KnownAnswerGenerator生成的向量（resources/kat/），
+//     用来发现改动是否破坏了与已保存数据的兼容性，以及各种解密方式的结果是否一致
+class KnownAnswerTest {
+
+    private static Pairing bp;
+    private static Properties kat;
+
+    @BeforeAll
+    static void load() throws IOException {
+        bp = ABEUtils.getPairing("a.properties");
+        kat = new Properties();
+        try (InputStream in = resource("kat.properties")) {
+            kat.load(in);
+        }
+    }
+
+    @Test
+    void qx() {
+        // q(x) = 5 + 2x + x^2, q(3) = 20
+        Element[] coef = {bp.getZr().newElement(5), bp.getZr().newElement(2), bp.getZr().newElement(1)};
+        Element index = bp.getZr().newElement(3);
+        assertEquals(BigInteger.valueOf(20), AccessTree.qx(index, coef, bp).toBigInteger());
+    }
+
+    @Test
+    void lagrange() {
+        // S = {1, 2, 3}, x = 0: delta_1 = 3, delta_2 = -3, delta_3 = 1
+        int[] S = {1, 2, 3};
+        BigInteger r = bp.getZr().getOrder();
+        assertEquals(BigInteger.valueOf(3), AccessTree.lagrange(1, S, 0, bp).toBigInteger());
+        assertEquals(r.subtract(BigInteger.valueOf(3)), AccessTree.lagrange(2, S, 0, bp).toBigInteger());
+        assertEquals(BigInteger.ONE, AccessTree.lagrange(3, S, 0, bp).toBigInteger());
+
+        // 批量计算与缓存的结果与S中元素的顺序对应
+        int[] unsorted = {3, 1, 2};
+        BigInteger[] expected = {BigInteger.ONE, BigInteger.valueOf(3), r.subtract(BigInteger.valueOf(3))};
+        Element[] batch = AccessTree.lagrangeCoefficients(unsorted, 0, bp);
+        LagrangeCache cache = new LagrangeCache(bp);
+        cache.get(S, 0);
+        Element[] cached = cache.get(unsorted, 0);
+        assertEquals(1, cache.getHits());
+        for (int t = 0; t < unsorted.length; t++) {
+            assertEquals(expected[t], batch[t].toBigInteger());
+            assertEquals(expected[t], cached[t].toBigInteger());
+        }
+    }
+
+    // CurvePow与JPBC的powZn结果相同：随机底数和指数，以及0、1、-1和无穷远点
+    @Test
+    void curvePowMatchesPowZn() {
+        for (int i = 0; i < 20; i++) {
+            Element base = bp.getG1().newRandomElement().getImmutable();
+            Element exp = bp.getZr().newRandomElement().getImmutable();
+            assertEquals(base.powZn(exp), CurvePow.powZn(base, exp), "random " + i);
+            assertEquals(base.powZn(exp.negate()), CurvePow.powZn(base, exp.negate()), "negated " + i);
+        }
+        Element base = bp.getG1().newRandomElement().getImmutable();
+        for (Element exp : new Element[]{bp.getZr().newZeroElement(), bp.getZr().newOneElement(),
+                bp.getZr().newOneElement().negate(), bp.getZr().newElement(2)}) {
+            assertEquals(base.powZn(exp), CurvePow.powZn(base, exp), exp.toString());
+        }
+        Element zero = bp.getG1().newZeroElement().getImmutable();
+        assertEquals(zero, CurvePow.powZn(zero, bp.getZr().newRandomElement()));
+        Element gt = bp.getGT().newRandomElement().getImmutable();
+        Element exp = bp.getZr().newRandomElement().getImmutable();
+        assertEquals(gt.powZn(exp), CurvePow.powZn(gt, exp));
+    }
+
+    @Test
+    void sha1() throws Exception {
+        assertEquals("356a192b7913b04c54574d18c28d46e6395428ab", KnownAnswerGenerator.hex(CPABE.sha1("1")));
+    }
+
+    @Test
+    void attributeHash() {
+        for (int att : KnownAnswerGenerator.HASHED_ATTS) {
+            assertEquals(kat.getProperty("hash." + att), KnownAnswerGenerator.hex(AttributeHashCache.hash(bp, att).toBytes()),
+                    "attribute " + att);
+        }
+    }
+
+    @Test
+    void policyCompile() {
+        Policy policy = Policy.compile(KnownAnswerGenerator.CP_POLICY);
+        assertEquals("1 of (2 of (1, 2), 2 of (3, 4, 5))", policy.toString());
+        assertEquals(5, policy.leafCount());
+
+        // 同一属性的两个叶子在密文和私钥中只能保存一份组件，化简后仍重复的策略被拒绝
+        assertEquals("1 of (1, 2)", Policy.compile("1 OR (1 OR 2) OR 2").toString());
+        assertThrows(IllegalArgumentException.class, () -> Policy.compile("(1 AND 2) OR (1 AND 3)"));
+        assertThrows(IllegalArgumentException.class,
+                () -> Policy.of(new Node[]{new Node(new int[]{1, 2}, new int[]{1, 2}), new Node(7), new Node(7)}));
+    }
+
+    @Test
+    void cpabeDecrypt() throws IOException {
+        CPABEEngine engine = new CPABEEngine(bp, ABEBinaryFormat.readCPABEPublicKey(resource("cp-pk.bin"), bp));
+        CPABESecretKey sk = ABEBinaryFormat.readCPABESecretKey(resource("cp-sk.bin"), bp);
+        CPABECiphertext ct = ABEBinaryFormat.readCPABECiphertext(resource("cp-ct.bin"), bp);
+        Policy policy = Policy.compile(KnownAnswerGenerator.CP_POLICY);
+        String message = kat.getProperty("cp.message");
+        for (DecryptMode mode : DecryptMode.values()) {
+            Element m = engine.decrypt(policy, ct, sk, mode);
+            assertNotNull(m, mode.name());
+            assertEquals(message, KnownAnswerGenerator.hex(m.toBytes()), mode.name());
+            assertEquals(message, KnownAnswerGenerator.hex(engine.decrypt(policy, ct, engine.prepare(sk), mode).toBytes()),
+                    mode + " with prepared key");
+        }
+
+        CPABESecretKey unsatisfied = ABEBinaryFormat.readCPABESecretKey(resource("cp-sk-unsatisfied.bin"), bp);
+        for (DecryptMode mode : DecryptMode.values()) {
+            assertNull(engine.decrypt(policy, ct, unsatisfied, mode), mode.name());
+        }
+    }
+
+    // 外包解密：服务端用转换私钥转换，客户端用z完成解密，结果与直接解密相同；部分解密的密文可以序列化后传给客户端
+    @Test
+    void cpabeOutsourcedDecrypt() throws IOException {
+        CPABEEngine engine = new CPABEEngine(bp, ABEBinaryFormat.readCPABEPublicKey(resource("cp-pk.bin"), bp));
+        CPABECiphertext ct = ABEBinaryFormat.readCPABECiphertext(resource("cp-ct.bin"), bp);
+        Policy policy = Policy.compile(KnownAnswerGenerator.CP_POLICY);
+        CPABEOutsourcedKey key = engine.outsource(ABEBinaryFormat.readCPABESecretKey(resource("cp-sk.bin"), bp));
+        CPABEDecryptionKey tk = engine.prepare(key.transformKey);
+        // 转换私钥本身不能解密
+        assertNotEquals(kat.getProperty("cp.message"), KnownAnswerGenerator.hex(engine.decrypt(policy, ct, tk).toBytes()));
+        for (DecryptMode mode : DecryptMode.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ABEBinaryFormat.write(engine.transform(policy, ct, tk, mode), out);
+            CPABEPartialCiphertext pct = ABEBinaryFormat.readCPABEPartialCiphertext(new ByteArrayInputStream(out.toByteArray()), bp);
+            assertEquals(kat.getProperty("cp.message"), KnownAnswerGenerator.hex(engine.decrypt(pct, key.retrievalKey).toBytes()),
+                    mode.name());
+        }
+
+        CPABEOutsourcedKey unsatisfied = engine.outsource(ABEBinaryFormat.readCPABESecretKey(resource("cp-sk-unsatisfied.bin"), bp));
+        assertNull(engine.transform(policy, ct, engine.prepare(unsatisfied.transformKey)));
+    }
+
+    @Test
+    void kpabeDecrypt() throws IOException {
+        KPABEEngine engine = new KPABEEngine(bp, ABEBinaryFormat.readKPABEPublicKey(resource("kp-pk.bin"), bp));
+        KPABESecretKey sk = ABEBinaryFormat.readKPABESecretKey(resource("kp-sk.bin"), bp);
+        KPABECiphertext ct = ABEBinaryFormat.readKPABECiphertext(resource("kp-ct.bin"), bp);
+        Policy policy = Policy.compile(KnownAnswerGenerator.KP_POLICY);
+        String message = kat.getProperty("kp.message");
+        for (DecryptMode mode : DecryptMode.values()) {
+            Element m = engine.decrypt(policy, ct, sk, mode);
+            assertNotNull(m, mode.name());
+            assertEquals(message, KnownAnswerGenerator.hex(m.toBytes()), mode.name());
+        }
+
+        KPABECiphertext unsatisfied = ABEBinaryFormat.readKPABECiphertext(resource("kp-ct-unsatisfied.bin"), bp);
+        for (DecryptMode mode : DecryptMode.values()) {
+            assertNull(engine.decrypt(policy, unsatisfied, sk, mode), mode.name());
+        }
+    }
+
+    // 读出再以相同的格式写回，结果应与向量文件逐字节相同
+    @Test
+    void binaryFormatRoundTrip() throws IOException {
+        byte[] expected = readAll("cp-ct.bin");
+        CPABECiphertext ct = ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(expected), bp);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(ct, out, true);
+        assertArrayEquals(expected, out.toByteArray());
+
+        expected = readAll("kp-pk.bin");
+        KPABEPublicKey pk = ABEBinaryFormat.readKPABEPublicKey(new ByteArrayInputStream(expected), bp);
+        out = new ByteArrayOutputStream();
+        ABEBinaryFormat.write(pk, out);
+        assertArrayEquals(expected, out.toByteArray());
+    }
+
+    // 头部中的类型、长度和个数被改坏时，流式读取与view()一样只抛出IOException
+    @Test
+    void corruptBinaryRecord() throws IOException {
+        byte[] valid = readAll("cp-ct.bin");
+        // 类型、headerLen、fixedCount、perAttCount、第一个固定元素的长度、attCount、fixedCount、
+        // 与headerLen不符的perAttCount、第一个属性元素的长度
+        int[][] corruptions = {{5, 99}, {8, Integer.MAX_VALUE}, {12, -1}, {16, Integer.MAX_VALUE},
+                {20, Integer.MAX_VALUE}, {36, 1 << 30}, {12, 1}, {16, 3}, {28, Integer.MAX_VALUE}};
+        for (int[] corruption : corruptions) {
+            byte[] bytes = valid.clone();
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            if (corruption[0] == 5) {
+                buf.put(5, (byte) corruption[1]);
+            }
+            else {
+                buf.putInt(corruption[0], corruption[1]);
+            }
+            assertThrows(IOException.class,
+                    () -> ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(bytes), bp),
+                    "offset " + corruption[0]);
+            assertThrows(IOException.class, () -> ABEBinaryFormat.view(ByteBuffer.wrap(bytes), 0, null),
+                    "offset " + corruption[0]);
+        }
+
+        // 与headerLen一致但perAttCount与类型不符的头部：不能先按perAttCount分配数组
+        int perAttCount = 1 << 20;
+        int headerLen = 4 * (3 + 2 + perAttCount + 1);
+        ByteBuffer forged = ByteBuffer.allocate(12 + headerLen);
+        forged.putInt(ABEBinaryFormat.MAGIC).put((byte) ABEBinaryFormat.VERSION)
+                .put((byte) ABEBinaryFormat.Type.CP_CIPHERTEXT.code).put((byte) 0).put((byte) 0).putInt(headerLen);
+        forged.putInt(2).putInt(perAttCount).putInt(1).putInt(1);
+        for (int j = 0; j < perAttCount; j++) {
+            forged.putInt(ABEBinaryFormat.MAX_ELEMENT_LEN);
+        }
+        forged.putInt(1);
+        byte[] bytes = forged.array();
+        assertThrows(IOException.class, () -> ABEBinaryFormat.readCPABECiphertext(new ByteArrayInputStream(bytes), bp));
+        assertThrows(IOException.class, () -> ABEBinaryFormat.view(ByteBuffer.wrap(bytes), 0, null));
+    }
+
+    private static InputStream resource(String name) throws IOException {
+        InputStream in = KnownAnswerTest.class.getResourceAsStream("/kat/" + name);
+        if (in == null) {
+            throw new IOException("missing test vector kat/" + name);
+        }
+        return in;
+    }
+
+    private static byte[] readAll(String name) throws IOException {
+        try (InputStream in = resource(name)) {
+            return in.readAllBytes();
+        }
+    }
+}